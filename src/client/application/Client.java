@@ -1,8 +1,10 @@
 package client.application;
 
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.net.Socket;
 
@@ -50,7 +52,8 @@ public class Client extends Thread {
 	//public static void main(String[] args) {
 		try {
 			socket = new Socket(this.ip, this.port);
-			output = new PrintWriter(socket.getOutputStream(), true);
+			// Kein autoflush: sendPendingTasks() schickt alle bereiten Tasks mit einem flush
+			output = new PrintWriter(new BufferedWriter(new OutputStreamWriter(socket.getOutputStream())), false);
 			input = new BufferedReader(new InputStreamReader(socket.getInputStream()));
 
 			connected = true;
@@ -64,17 +67,24 @@ public class Client extends Thread {
 			while (socket.isConnected() && ((serverMessage = input.readLine()) != null)) {
 				// Sobald der Server eine Nachricht geschrieben hat
 				
-				if (queue.size() > 0) {
-					// Der Client hat vorher eine Anfrage geschickt -> Dies ist eine Antwort
+				int requestId = requestIdOf(serverMessage);
+				
+				if (requestId > 0) {
+					// Der Client hat vorher eine Anfrage geschickt -> Dies ist die Antwort auf den Task mit dieser ID
 					
-					CommunicationTask task = queue.currentTask();
+					CommunicationTask task = queue.completeTask(requestId);
+					String payload = serverMessage.substring(serverMessage.indexOf('@') + 1);
 
 					try {
-						String decryptedServerMessage = serverMessage;
+						if (task == null) {
+							throw new IllegalStateException("No task with request id " + requestId);
+						}
+						
+						String decryptedServerMessage = payload;
 						System.out.println("received enc: " + serverMessage);
 						
 						if (task.isEncrypt()) {
-							decryptedServerMessage = cryptoEngine.decrypt(serverMessage);
+							decryptedServerMessage = cryptoEngine.decrypt(payload);
 							System.out.println("decrypted: " + decryptedServerMessage);
 							if (decryptedServerMessage == null) {
 								throw new NullPointerException("Couldn't encrypt and send");
@@ -84,16 +94,8 @@ public class Client extends Thread {
 						// Nachricht in den Wrapper packen
 						ServerMessage response = new ServerMessage(decryptedServerMessage);
 						task.didReceiveAnswer(response);
-						queue.removeCurrentTask();
 
 						System.out.println(task.toString());
-
-						if (queue.size() > 0) {
-							task = queue.currentTask();
-							sendMessage(task);
-						} else {
-
-						}
 					} catch (Throwable e) {
 						System.err.println("DEBUG INFO: ");
 						System.err.println("Client class exception at receiving message");
@@ -105,7 +107,9 @@ public class Client extends Thread {
 							e.printStackTrace();
 						}
 					}
-
+					
+					// Es ist wieder Platz für weitere Anfragen
+					sendPendingTasks();
 				} else {
 					// Der Server hat eine Nachricht geschickt, ohne dass vorher der Client eine Anfrage formuliert hat
 					
@@ -158,10 +162,43 @@ public class Client extends Thread {
 	 */
 	public void enqueueTask(CommunicationTask task) {
 		queue.addTask(task);
+		sendPendingTasks();
+	}
+	
+	/**
+	 * Sendet wartende Tasks, solange weniger als die maximale Anzahl Anfragen unterwegs sind.
+	 * Alle Tasks gehen gesammelt mit einem einzigen flush raus
+	 */
+	private void sendPendingTasks() {
+		synchronized (queue) {
+			CommunicationTask task;
+			boolean sent = false;
+			while ((task = queue.nextTaskToSend()) != null) {
+				sendMessage(task);
+				sent = true;
+			}
+			if (sent) {
+				output.flush();
+			}
+		}
+	}
+	
+	/**
+	 * Liest die Request-ID einer Zeile im Format "id@nachricht"
+	 * @param line	Die Zeile vom Server
+	 * @return	Die ID oder 0, falls die Nachricht keine Antwort auf eine Anfrage ist
+	 */
+	private static int requestIdOf(String line) {
+		int at = line.indexOf('@');
+		if (at <= 0 || at > 9)
+			return 0;
 		
-		if (queue.count() == 1) {
-			sendMessage(task);
+		for (int i = 0; i < at; i++) {
+			if (!Character.isDigit(line.charAt(i)))
+				return 0;
 		}
+		
+		return Integer.parseInt(line.substring(0, at));
 	}
 	
 	/**
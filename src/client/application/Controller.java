@@ -21,6 +21,7 @@ import javafx.fxml.Initializable;
 import javafx.scene.Scene;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Button;
+import javafx.scene.control.ChoiceDialog;
 import javafx.scene.control.ListView;
 import javafx.scene.control.MenuItem;
 import javafx.scene.control.TextInputDialog;
@@ -41,6 +42,11 @@ import crypto.CryptoEngine;
  *
  */
 public class Controller implements Initializable, ClientDelegate {
+	/**
+	 * Die wählbaren Spielfelder: Spalten, Zeilen, Steine in einer Reihe. Das erste ist das klassische Spielfeld.
+	 */
+	private static final int[][] BOARD_SIZES = { { 7, 6, 4 }, { 9, 7, 5 }, { 10, 10, 5 } };
+
 	@FXML
 	private ListView<String> listView;
 
@@ -50,6 +56,9 @@ public class Controller implements Initializable, ClientDelegate {
 	@FXML
 	private Button promptNewGameButton;
 
+	@FXML
+	private Button quickMatchButton;
+
 	@FXML
 	private MenuItem refreshMenuItem;
 	
@@ -64,6 +73,8 @@ public class Controller implements Initializable, ClientDelegate {
 	private ConnectToServerController connectToServerController;
 	private GameController gameController;
 	private ChatController chatController;
+	private ArrayList<String> availableGames = new ArrayList<>();
+	private long lobbyVersion = -1;
 
 	public Controller() {
 		super();
@@ -84,6 +95,7 @@ public class Controller implements Initializable, ClientDelegate {
 		listView.setItems(value);
 		startButton.setDisable(true);
 		promptNewGameButton.setDisable(true);
+		quickMatchButton.setDisable(true);
 	}
 
 	public void unlockUI() {
@@ -190,7 +202,19 @@ public class Controller implements Initializable, ClientDelegate {
 		Optional<String> gameNameResult = dialog.showAndWait();
 		gameNameResult.ifPresent(result -> {
 			if (!gameNameResult.get().isEmpty()) {
-				this.client.enqueueTask(new CommunicationTask(new ClientMessage("server", "newgame", gameNameResult.get()), (success, response) -> {
+				int[] size = chooseBoardSize();
+				if (size == null) {
+					return;
+				}
+				// server:newgame:<Name>[:<Spalten>:<Zeilen>:<Steine in einer Reihe>]
+				ArrayList<String> arguments = new ArrayList<>();
+				arguments.add(gameNameResult.get());
+				if (size != BOARD_SIZES[0]) {
+					for (int value : size) {
+						arguments.add("" + value);
+					}
+				}
+				this.client.enqueueTask(new CommunicationTask(new ClientMessage("server", "newgame", arguments), (success, response) -> {
 					Platform.runLater(() -> {
 						if (success && response.getDomain().equals("success") && response.getCommand().equals("created")) {
 							refreshGameList(e);
@@ -207,6 +231,30 @@ public class Controller implements Initializable, ClientDelegate {
 		});
 	}
 
+	/**
+	 * Fragt nach der Größe des Spielfelds
+	 * @return	Spalten, Zeilen und Steine in einer Reihe oder null, wenn abgebrochen wurde
+	 */
+	private int[] chooseBoardSize() {
+		ArrayList<String> choices = new ArrayList<>();
+		for (int[] size : BOARD_SIZES) {
+			choices.add(boardSizeName(size));
+		}
+		ChoiceDialog<String> dialog = new ChoiceDialog<>(choices.get(0), choices);
+		dialog.setHeaderText("Neuer Spielvorschalg");
+		dialog.setContentText("Spielfeld:");
+
+		Optional<String> choice = dialog.showAndWait();
+		if (!choice.isPresent()) {
+			return null;
+		}
+		return BOARD_SIZES[choices.indexOf(choice.get())];
+	}
+
+	private static String boardSizeName(int[] size) {
+		return size[0] + " x " + size[1] + ", " + size[2] + " in einer Reihe";
+	}
+
 	/**
 	 * Startet das Game und öffnet das Spielfenster
 	 * @param e	Das Event
@@ -219,50 +267,8 @@ public class Controller implements Initializable, ClientDelegate {
 		client.enqueueTask(new CommunicationTask(new ClientMessage("game", "join", game), (success, response) -> {
 			if (success && response.getDomain().equals("success") && response.getCommand().equals("joined")) {
 				Platform.runLater(() -> {
-					try {
-						ArrayList<String> args = response.getArguments();
-						String arg1 = args.get(0);
-						boolean isFirst = Integer.parseInt(arg1) == 1;
-						System.out.println("arg1: " + arg1);
-						startButton.setDisable(false);
-
-						// load game fxml
-						FXMLLoader loader = new FXMLLoader(getClass().getResource("game.fxml"));
-						AnchorPane root = (AnchorPane)loader.load();
-						gameController = loader.getController();
-						gameController.setParent(this);
-						gameController.setPlayerTurn(isFirst);
-
-			            Stage stage = new Stage();
-
-			            // Handle window closing (finish game)
-			            stage.setOnCloseRequest((closeEvent) -> {
-			            	if (!gameController.isFinished()) {
-			            		CommunicationTask disconnectTask = new CommunicationTask(new ClientMessage("game", "finished", game), (disconnectedSuccessfully, disconnectResponse) -> {
-				            		Platform.runLater(() -> {
-				            			if (disconnectedSuccessfully) {
-
-					            		} else {
-					            			Alert alert = new Alert(AlertType.ERROR, "Can't disconnect from game. ServerMessage: " + disconnectResponse);
-					            			alert.show();
-					            		}
-				            		});
-				            	});
-
-				            	client.enqueueTask(disconnectTask);
-			            	}
-			            });
-
-			            stage.setResizable(false);
-			            stage.setTitle("4 Gewinnt - " + client.getUserID());
-			            stage.setScene(new Scene(root));
-			            stage.show();
-			            gameController.viewDidAppear();
-					} catch (IOException e1) {
-						e1.printStackTrace();
-					} catch (NumberFormatException e2) {
-						e2.printStackTrace();
-					}
+					startButton.setDisable(false);
+					presentGameWindow(game, response);
 				});
 			} else {
 				startButton.setDisable(false);
@@ -270,10 +276,87 @@ public class Controller implements Initializable, ClientDelegate {
 		}));
 	}
 
+	/**
+	 * Sucht einen beliebigen Gegner. Der Server antwortet erst, wenn ein Gegner gefunden wurde.
+	 * @param e	Das Event
+	 */
+	@FXML
+	public void startQuickMatch(Event e) {
+		quickMatchButton.setDisable(true);
+		startButton.setDisable(true);
+		client.enqueueTask(new CommunicationTask(new ClientMessage("game", "quickmatch", new ArrayList<>()), (success, response) -> {
+			Platform.runLater(() -> {
+				quickMatchButton.setDisable(false);
+				startButton.setDisable(false);
+				// Antwort: success:joined:<Sitz>:<Spielname>:<Spalten>:<Zeilen>:<Steine in einer Reihe>
+				if (success && response.getDomain().equals("success") && response.getCommand().equals("joined")
+						&& response.getArguments().size() > 1) {
+					presentGameWindow(response.getArguments().get(1), response);
+				}
+			});
+		}));
+	}
+
+	/**
+	 * Öffnet das Spielfenster
+	 * @param game	Der Name des Spiels
+	 * @param response	Die "success:joined" Antwort des Servers
+	 */
+	private void presentGameWindow(String game, ServerMessage response) {
+		try {
+			ArrayList<String> args = response.getArguments();
+			String arg1 = args.get(0);
+			boolean isFirst = Integer.parseInt(arg1) == 1;
+			System.out.println("arg1: " + arg1);
+
+			// load game fxml
+			FXMLLoader loader = new FXMLLoader(getClass().getResource("game.fxml"));
+			AnchorPane root = (AnchorPane)loader.load();
+			gameController = loader.getController();
+			gameController.setParent(this);
+			gameController.setPlayerTurn(isFirst);
+			// Antwort: success:joined:<Sitz>:<Spielname>:<Spalten>:<Zeilen>:<Steine in einer Reihe>
+			if (args.size() >= 5) {
+				gameController.setBoardSize(Integer.parseInt(args.get(2)), Integer.parseInt(args.get(3)), Integer.parseInt(args.get(4)));
+			}
+
+            Stage stage = new Stage();
+
+            // Handle window closing (finish game)
+            stage.setOnCloseRequest((closeEvent) -> {
+            	if (!gameController.isFinished()) {
+            		CommunicationTask disconnectTask = new CommunicationTask(new ClientMessage("game", "finished", game), (disconnectedSuccessfully, disconnectResponse) -> {
+	            		Platform.runLater(() -> {
+	            			if (disconnectedSuccessfully) {
+
+		            		} else {
+		            			Alert alert = new Alert(AlertType.ERROR, "Can't disconnect from game. ServerMessage: " + disconnectResponse);
+		            			alert.show();
+		            		}
+	            		});
+	            	});
+
+	            	client.enqueueTask(disconnectTask);
+            	}
+            });
+
+            stage.setResizable(false);
+            stage.setTitle(gameController.getWinLength() + " Gewinnt - " + client.getUserID());
+            stage.setScene(new Scene(root));
+            stage.show();
+            gameController.viewDidAppear();
+		} catch (IOException e1) {
+			e1.printStackTrace();
+		} catch (NumberFormatException e2) {
+			e2.printStackTrace();
+		}
+	}
+
 	@FXML
 	public void refreshGameList(Event e) {
 		if (this.client.isConnected()) {
-			this.client.enqueueTask(new CommunicationTask(new ClientMessage("info", "requestGames", new ArrayList<>()), (success, response) -> {
+			// Der Server antwortet mit "notmodified", wenn sich die Liste seit dieser Version nicht geändert hat
+			this.client.enqueueTask(new CommunicationTask(new ClientMessage("info", "requestGames", "since=" + lobbyVersion), (success, response) -> {
 				if (success && response.getDomain().equals("success")) {
 					handleGameRequestResponse(success, response);
 				}
@@ -316,6 +399,7 @@ public class Controller implements Initializable, ClientDelegate {
 		
 		refreshMenuItem.setDisable(false);
 		promptNewGameButton.setDisable(false);
+		quickMatchButton.setDisable(false);
 
 		connectToServerController.getStatusLabel().setText("Erfolgreich mit Server verbunden");
 		connectToServerController.getStatusLabel().setTextFill(Color.GREEN);
@@ -355,6 +439,10 @@ public class Controller implements Initializable, ClientDelegate {
 											Platform.runLater(() -> {
 												listView.setItems(FXCollections.observableArrayList("Synchronisation..."));
 
+												// Änderungen an der Spieleliste abonnieren, statt sie immer wieder neu zu laden.
+												// Zuerst abonnieren, dann die Liste holen: sonst gehen Änderungen zwischen Liste und Abo verloren
+												client.enqueueTask(new CommunicationTask(new ClientMessage("info", "subscribe", new ArrayList<>())));
+												
 												// Aktuelle Spiele vom Server holen
 												CommunicationTask gamesRequestTask = new CommunicationTask(new ClientMessage("info", "requestGames", new ArrayList<>()));
 												gamesRequestTask.setCompletedRunnable((successFullyRequestedGames, requestGamesMessage) -> {
@@ -368,6 +456,7 @@ public class Controller implements Initializable, ClientDelegate {
 													BorderPane chatroot = (BorderPane)chatloader.load();
 													chatController = chatloader.getController();
 													chatController.setClient(tCon.client);
+													chatController.requestLobbyHistory();
 													Stage stage = new Stage();
 													stage.setResizable(false);
 											        stage.setTitle("Chat");
@@ -408,6 +497,8 @@ public class Controller implements Initializable, ClientDelegate {
 	public void clientDidDisconnect(Client client) {
 		refreshMenuItem.setDisable(true);
 		lockUI();
+		availableGames.clear();
+		lobbyVersion = -1;
 		listView.setItems(FXCollections.observableArrayList("Nicht verbunden"));
 		
 		connectOrDisconnectMenuItem.setText("Verbinden");
@@ -421,25 +512,25 @@ public class Controller implements Initializable, ClientDelegate {
 	 */
 	private void handleGameRequestResponse(boolean successFullyRequestedGames, ServerMessage requestGamesMessage) {
 		Platform.runLater(() -> {
-			if (successFullyRequestedGames && requestGamesMessage.getDomain().equals("success")) {
+			if (successFullyRequestedGames && requestGamesMessage.getDomain().equals("success") && requestGamesMessage.getCommand().equals("notmodified")) {
+				// Die Liste ist noch aktuell
+				showAvailableGames();
+			} else if (successFullyRequestedGames && requestGamesMessage.getDomain().equals("success")) {
 				ArrayList<String> args = requestGamesMessage.getArguments();
-				ArrayList<String> availableGames = new ArrayList<>();
+				availableGames = new ArrayList<>();
+				lobbyVersion = parseLobbyVersion(args, 1);
 
 				if (args.size() > 0) {
 					String arg1 = args.get(0);
 					String[] components = arg1.split(",");
 
 					for (int i = 0; i < components.length; ++i) {
-						availableGames.add(components[i]);
+						if (!components[i].isEmpty())
+							availableGames.add(components[i]);
 					}
 				}
 
-				if (availableGames.size() <= 0) {
-					listView.setItems(FXCollections.observableArrayList("Keine Spiele vorhanden"));
-				} else {
-					unlockUI();
-					listView.setItems(FXCollections.observableArrayList(availableGames));
-				}
+				showAvailableGames();
 			} else {
 				ObservableList<String> value = FXCollections.observableArrayList(
 						"Ein Fehler ist aufgetreten bei der Synchronisation",
@@ -450,6 +541,67 @@ public class Controller implements Initializable, ClientDelegate {
 		});
 	}
 
+	/**
+	 * Zeigt die bekannten Spiele in der Tabelle an
+	 */
+	private void showAvailableGames() {
+		if (availableGames.size() <= 0) {
+			listView.setItems(FXCollections.observableArrayList("Keine Spiele vorhanden"));
+		} else {
+			unlockUI();
+			listView.setItems(FXCollections.observableArrayList(availableGames));
+		}
+	}
+	
+	/**
+	 * Liest die Version der Spieleliste aus den Argumenten einer Servernachricht
+	 * @param args	Die Argumente
+	 * @param index	Die Position der Version
+	 * @return	Die Version oder -1, falls der Server keine mitgeschickt hat
+	 */
+	private long parseLobbyVersion(ArrayList<String> args, int index) {
+		if (args.size() <= index)
+			return -1;
+		
+		try {
+			return Long.parseLong(args.get(index));
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+	
+	/**
+	 * Wendet die vom Server gepushten Änderungen auf die Spieleliste an.
+	 * Format der Änderungen: +erstellt,~voll,-entfernt
+	 * @param message	Die lobby:changes Nachricht
+	 */
+	private void applyLobbyChanges(ServerMessage message) {
+		if (message.getArguments().size() < 1)
+			return;
+		
+		long version = parseLobbyVersion(message.getArguments(), 1);
+		if (version >= 0 && version <= lobbyVersion)
+			return; // Schon in der geladenen Liste enthalten
+		
+		lobbyVersion = version;
+		
+		for (String change : message.getArguments().get(0).split(",")) {
+			if (change.length() < 2)
+				continue;
+			
+			String name = change.substring(1);
+			if (change.charAt(0) == '+') {
+				if (!availableGames.contains(name))
+					availableGames.add(name);
+			} else {
+				// Volle und entfernte Spiele können nicht mehr betreten werden
+				availableGames.remove(name);
+			}
+		}
+		
+		showAvailableGames();
+	}
+
 	@Override
 	public void clientDidReceiveException(Throwable e) {
 		e.printStackTrace(); // Todo: Bessere Fehlerbehandlung
@@ -500,6 +652,12 @@ public class Controller implements Initializable, ClientDelegate {
 		} else if (message.getDomain().equals("chat")) {
 			// Eine chat-relevante Nachricht ist eingroffen
 			chatController.didReceiveChatServerMessage(message);
+		} else if (message.getDomain().equals("lobby") && message.getCommand().equals("stale")) {
+			// Der Server hat Änderungen verworfen, weil wir zu langsam gelesen haben => Liste neu laden
+			refreshGameList(null);
+		} else if (message.getDomain().equals("lobby")) {
+			// Die Spieleliste hat sich geändert
+			applyLobbyChanges(message);
 		}
 	}
 	
@@ -526,6 +684,14 @@ public class Controller implements Initializable, ClientDelegate {
 	public void setPromptNewGameButton(Button promptNewGameButton) {
 		this.promptNewGameButton = promptNewGameButton;
 	}
+
+	public Button getQuickMatchButton() {
+		return quickMatchButton;
+	}
+
+	public void setQuickMatchButton(Button quickMatchButton) {
+		this.quickMatchButton = quickMatchButton;
+	}
 	
 	public MenuItem getConnectOrDisconnectMenuItem() {
 		return connectOrDisconnectMenuItem;
@@ -19,6 +19,7 @@ import javafx.scene.control.Label;
 import javafx.scene.control.Menu;
 import javafx.scene.control.RadioMenuItem;
 import javafx.scene.input.MouseEvent;
+import javafx.scene.layout.AnchorPane;
 import javafx.scene.paint.Color;
 import javafx.stage.Stage;
 import client.message.ClientMessage;
@@ -66,18 +67,23 @@ public class GameController implements Initializable, Observer {
 	@FXML
 	private Menu opponentColorMenu;
 
-	protected final int W_COUNT = 7;
-	protected final int H_COUNT = 6;
-	protected final int RADIUS = 38;
+	protected final int MAX_RADIUS = 38;
 	protected final int MARGIN = 10;
-	protected final int PADDING_X = RADIUS + MARGIN;
-	protected final int PADDING_Y = RADIUS + MARGIN + 5;
-	protected ArrayList<ArrayList<Integer>> board = new ArrayList<>(H_COUNT); // 0=empty, 1=player, 2=opponent
+	protected final int MAX_CANVAS_WIDTH = 900;
+	protected final int MAX_CANVAS_HEIGHT = 760;
+	protected int columnCount = 7;
+	protected int rowCount = 6;
+	protected int winLength = 4;
+	protected int radius = MAX_RADIUS;
+	protected int paddingX = radius + MARGIN;
+	protected int paddingY = radius + MARGIN + 5;
+	protected ArrayList<ArrayList<Integer>> board = new ArrayList<>(rowCount); // 0=empty, 1=player, 2=opponent
 	protected boolean isPlayerTurn;
 	
 	private CommunicationTask currentTask;
 	private Integer[] temporaryStone = new Integer[] { -1, -1 };
 	private int mouseOverCol = -1;
+	private int hintColumn = -1;
 	private boolean isFinished = false;
 	private StoneColors colors = (StoneColors)UserDefaults.sharedDefaults().valueForKey(UserDefaults.STONE_COLORS_KEY, StoneColors.defaultColors());
 	
@@ -100,15 +106,7 @@ public class GameController implements Initializable, Observer {
 		ArrayList<ColorTypes> clone = (ArrayList<ColorTypes>)playerMenuIndices.clone();
 		opponentMenuIndices = clone;
 		
-		// Das Spielfeld mit leeren Feldern füllen
-		for (int y = 0; y < H_COUNT; y++) {
-			ArrayList<Integer> listi = new ArrayList<>(W_COUNT);
-			for (int x = 0; x < W_COUNT; x++) {
-				listi.add(0);
-			}
-
-			board.add(listi);
-		}
+		clearBoard();
 
 		/**
 		 * 
@@ -130,6 +128,53 @@ public class GameController implements Initializable, Observer {
 		draw();
 	}
 	
+	/**
+	 * Das Spielfeld mit leeren Feldern füllen
+	 */
+	private void clearBoard() {
+		board.clear();
+		for (int y = 0; y < rowCount; y++) {
+			ArrayList<Integer> listi = new ArrayList<>(columnCount);
+			for (int x = 0; x < columnCount; x++) {
+				listi.add(0);
+			}
+
+			board.add(listi);
+		}
+	}
+
+	/**
+	 * Setzt die Größe des Spielfelds, die der Server beim Beitreten schickt, und passt die Zeichenfläche an.
+	 * Muss aufgerufen werden, bevor das Fenster angezeigt wird.
+	 * @param columns	Anzahl der Spalten
+	 * @param rows	Anzahl der Zeilen
+	 * @param winLength	Wie viele Steine in einer Reihe gewinnen
+	 */
+	public void setBoardSize(int columns, int rows, int winLength) {
+		this.columnCount = columns;
+		this.rowCount = rows;
+		this.winLength = winLength;
+
+		// Bei großen Spielfeldern werden die Steine kleiner, damit das Fenster auf den Bildschirm passt
+		int cell = Math.min((MAX_CANVAS_WIDTH - MAX_RADIUS - MARGIN - 6) / columns, (MAX_CANVAS_HEIGHT - MAX_RADIUS - MARGIN - 17) / rows);
+		radius = Math.min(MAX_RADIUS, (cell - MARGIN) / 2);
+		paddingX = radius + MARGIN;
+		paddingY = radius + MARGIN + 5;
+
+		double width = columns * (2 * radius + MARGIN) + paddingX + 6;
+		double height = rows * (2 * radius + MARGIN) + paddingY + 12;
+		canvas.setWidth(width);
+		canvas.setHeight(height);
+		if (canvas.getParent() instanceof AnchorPane) {
+			((AnchorPane)canvas.getParent()).setPrefSize(width + 16, height + 43);
+		}
+		statusLabel.setPrefWidth(width - 25);
+		statusLabel.setLayoutY(canvas.getLayoutY() + height / 2 - statusLabel.getPrefHeight() / 2);
+
+		clearBoard();
+		draw();
+	}
+
 	public void viewDidAppear() {
 		if (isPlayerTurn) {
 			updateStatusMenu(GameStatus.PLAYER_TURN_BUT_WAITING);
@@ -195,6 +240,69 @@ public class GameController implements Initializable, Observer {
 		})));
 	}
 
+	/**
+	 * Fragt den Server nach den Bewertungen aller Spalten und markiert die beste
+	 * @param e
+	 */
+	@FXML
+	public void requestHint(Event e) {
+		if (!isPlayerTurn || isFinished)
+			return;
+		
+		this.parent.getClient().enqueueTask(new CommunicationTask(new ClientMessage("game", "hint", ""), ((success, response) -> {
+			Platform.runLater(() -> {
+				// Der Tipp ist veraltet, wenn inzwischen gesetzt wurde
+				if (success && response.getDomain().equals("success") && isPlayerTurn && !isFinished) {
+					showHint(response.getArguments());
+				}
+			});
+		})));
+	}
+	
+	/**
+	 * Zeigt den Tipp an
+	 * @param scores	Die Bewertung jeder Spalte, "x" für volle Spalten, mit "w" für einen sicheren Sieg und "l" für eine sichere Niederlage
+	 */
+	private void showHint(ArrayList<String> scores) {
+		int best = -1;
+		int bestScore = 0;
+		char bestResult = ' ';
+		for (int x = 0; x < scores.size() && x < columnCount; x++) {
+			String value = scores.get(x);
+			if (value.equals("x"))
+				continue;
+			
+			// Ob die Spalte entschieden ist, sagt der Server, nicht die Höhe der Bewertung
+			char result = ' ';
+			if (value.endsWith("w") || value.endsWith("l")) {
+				result = value.charAt(value.length() - 1);
+				value = value.substring(0, value.length() - 1);
+			}
+			
+			int score = Integer.parseInt(value);
+			// Bei gleicher Bewertung die Spalte näher an der Mitte
+			if (best < 0 || score > bestScore || (score == bestScore && Math.abs(2 * x - columnCount + 1) < Math.abs(2 * best - columnCount + 1))) {
+				best = x;
+				bestScore = score;
+				bestResult = result;
+			}
+		}
+		
+		if (best < 0)
+			return;
+		
+		hintColumn = best;
+		String text = "Tipp: Spalte " + (best + 1);
+		if (bestResult == 'w') {
+			text += " (Sieg)";
+		} else if (bestResult == 'l') {
+			text += " (verloren)";
+		}
+		
+		statusMenu.setText(text);
+		draw();
+	}
+
 	@FXML
 	public void showHow4WinsWorksHelpWindow(Event e) {
 		getParent().presentHelpWindow(e, HelpType.HOW_TO_PLAY_4_WINS);
@@ -208,16 +316,17 @@ public class GameController implements Initializable, Observer {
 
 		drawGrid();
 		drawStones();
+		drawHint();
 	}
 
 	/**
 	 * Zeichnet die einzelnen Felder
 	 */
 	private void drawGrid() {
-		for (int y = 0; y < H_COUNT; y++) {
-			for (int x = 0; x < W_COUNT; x++) {
-				double posX = (x + 1) * MARGIN + 2 * RADIUS * x + PADDING_X;
-				double posY = (y + 1) * MARGIN + 2 * RADIUS * y + PADDING_Y;
+		for (int y = 0; y < rowCount; y++) {
+			for (int x = 0; x < columnCount; x++) {
+				double posX = (x + 1) * MARGIN + 2 * radius * x + paddingX;
+				double posY = (y + 1) * MARGIN + 2 * radius * y + paddingY;
 
 				if (isFinished) {
 					graphicsContext.setStroke(Color.LIGHTGRAY);
@@ -226,7 +335,7 @@ public class GameController implements Initializable, Observer {
 				}
 				
 				graphicsContext.beginPath();
-				graphicsContext.arc(posX, posY, RADIUS, RADIUS, 0, 360);
+				graphicsContext.arc(posX, posY, radius, radius, 0, 360);
 				graphicsContext.closePath();
 				graphicsContext.stroke();
 			}
@@ -238,8 +347,8 @@ public class GameController implements Initializable, Observer {
 	 */
 	private void drawStones() {
 		boolean didDrawMouseOverCol = mouseOverCol < 0;
-		for (int y = H_COUNT-1; y >= 0; y--) {
-			for (int x = 0; x < W_COUNT; x++) {
+		for (int y = rowCount-1; y >= 0; y--) {
+			for (int x = 0; x < columnCount; x++) {
 				int stone = board.get(y).get(x);
 				if (stone == 0) {
 					// empty
@@ -247,12 +356,12 @@ public class GameController implements Initializable, Observer {
 					if (!didDrawMouseOverCol && x == mouseOverCol && isPlayerTurn && !isFinished) {
 						Color color = Color.LIGHTGRAY;
 						
-						double posX = (x + 1) * MARGIN + 2 * RADIUS * x + PADDING_X;
-						double posY = (y + 1) * MARGIN + 2 * RADIUS * y + PADDING_Y;
+						double posX = (x + 1) * MARGIN + 2 * radius * x + paddingX;
+						double posY = (y + 1) * MARGIN + 2 * radius * y + paddingY;
 						
 						graphicsContext.beginPath();
 						graphicsContext.setFill(color);
-						graphicsContext.arc(posX, posY, RADIUS-1, RADIUS-1, 0, 360);
+						graphicsContext.arc(posX, posY, radius-1, radius-1, 0, 360);
 						graphicsContext.closePath();
 						graphicsContext.fill();
 						
@@ -268,19 +377,19 @@ public class GameController implements Initializable, Observer {
 						color = colors.playerColor().getLightColor().val();
 					}
 					
-					double posX = (x + 1) * MARGIN + 2 * RADIUS * x + PADDING_X;
-					double posY = (y + 1) * MARGIN + 2 * RADIUS * y + PADDING_Y;
+					double posX = (x + 1) * MARGIN + 2 * radius * x + paddingX;
+					double posY = (y + 1) * MARGIN + 2 * radius * y + paddingY;
 
 					graphicsContext.beginPath();
 					graphicsContext.setFill(color);
-					graphicsContext.arc(posX, posY, RADIUS-1, RADIUS-1, 0, 360);
+					graphicsContext.arc(posX, posY, radius-1, radius-1, 0, 360);
 					graphicsContext.closePath();
 					graphicsContext.fill();
 				} else {
 					// opponent
 
-					double posX = (x + 1) * MARGIN + 2 * RADIUS * x + PADDING_X;
-					double posY = (y + 1) * MARGIN + 2 * RADIUS * y + PADDING_Y;
+					double posX = (x + 1) * MARGIN + 2 * radius * x + paddingX;
+					double posY = (y + 1) * MARGIN + 2 * radius * y + paddingY;
 
 					Color color;
 					
@@ -292,7 +401,7 @@ public class GameController implements Initializable, Observer {
 					
 					graphicsContext.beginPath();
 					graphicsContext.setFill(color);
-					graphicsContext.arc(posX, posY, RADIUS-1, RADIUS-1, 0, 360);
+					graphicsContext.arc(posX, posY, radius-1, radius-1, 0, 360);
 					graphicsContext.closePath();
 					graphicsContext.fill();
 				}
@@ -300,9 +409,31 @@ public class GameController implements Initializable, Observer {
 		}
 	}
 
+	/**
+	 * Zeichnet den vorgeschlagenen Stein
+	 */
+	private void drawHint() {
+		if (hintColumn < 0 || !isPlayerTurn || isFinished)
+			return;
+		
+		for (int y = rowCount-1; y >= 0; y--) {
+			if (board.get(y).get(hintColumn) == 0) {
+				double posX = (hintColumn + 1) * MARGIN + 2 * radius * hintColumn + paddingX;
+				double posY = (y + 1) * MARGIN + 2 * radius * y + paddingY;
+				
+				graphicsContext.beginPath();
+				graphicsContext.setFill(Color.LIGHTGREEN);
+				graphicsContext.arc(posX, posY, radius-1, radius-1, 0, 360);
+				graphicsContext.closePath();
+				graphicsContext.fill();
+				return;
+			}
+		}
+	}
+
 	private void mouseMoved(MouseEvent e) {
 		int x = (int)e.getX();
-		int column = Math.max((int)((x - PADDING_X / 2) / ((2 * RADIUS + MARGIN))), 0);
+		int column = Math.max((int)((x - paddingX / 2) / ((2 * radius + MARGIN))), 0);
 		
 		if (column != mouseOverCol) {
 			mouseOverCol = column;
@@ -318,9 +449,12 @@ public class GameController implements Initializable, Observer {
 		
 		int x = (int)e.getSceneX();
 
-		int column = Math.max((int)((x - PADDING_X / 2) / ((2 * RADIUS + MARGIN))), 0);
+		int column = Math.max((int)((x - paddingX / 2) / ((2 * radius + MARGIN))), 0);
+		if (column >= columnCount)
+			return;
 		
 		isPlayerTurn = false;
+		hintColumn = -1;
 		setStone(column, false, (didSet) -> {
 			if (didSet) {
 				resetTempStone();
@@ -374,7 +508,7 @@ public class GameController implements Initializable, Observer {
 	 * @return
 	 */
 	public boolean setStone(int column, boolean isOpponent, CompletionHandler<Boolean> completionHandler) {
-		for (int y = H_COUNT-1; y >= 0; y--) {
+		for (int y = rowCount-1; y >= 0; y--) {
 			if (board.get(y).get(column) == 0) {
 				if (!isOpponent) {
 					currentTask = new CommunicationTask(new ClientMessage("game", "setstone", ""+column), (success, response) -> {
@@ -489,6 +623,10 @@ public class GameController implements Initializable, Observer {
 		this.statusLabel = statusLabel;
 	}
 
+	public int getWinLength() {
+		return winLength;
+	}
+
 	public boolean isPlayerTurn() {
 		return isPlayerTurn;
 	}
@@ -39,25 +39,90 @@ public class ChatController implements Initializable {
 		listView.setItems(messages);
 	}
 
+	/**
+	 * Sendet den Text an die Lobby bzw. den Gegner.
+	 * "/join channel" und "/leave channel" treten einem Channel bei bzw. verlassen ihn,
+	 * "#channel text" sendet den Text an einen Channel.
+	 */
 	@FXML
 	private void sendButtonPressed() {
 		String text = getChatTextField().getText();
 		
-		client.enqueueTask(new CommunicationTask(new ClientMessage("chat", "send", text), (success, msg) -> {
-			if (success) {
+		if (text.startsWith("/join ") || text.startsWith("/leave ")) {
+			String[] parts = text.substring(1).split(" ", 2);
+			String channel = parts[1].trim();
+			
+			client.enqueueTask(new CommunicationTask(new ClientMessage("chat", parts[0], channel), (success, msg) -> {
+				Platform.runLater(() -> {
+					if (success && msg.getDomain().equals("chat")) {
+						listView.getItems().add((parts[0].equals("join") ? "Channel beigetreten: #" : "Channel verlassen: #") + channel);
+						showHistory(msg);
+					} else {
+						listView.getItems().add(msg == null ? "Fehler" : msg.toString());
+					}
+				});
+			}));
+		} else if (text.startsWith("#") && text.indexOf(' ') > 1) {
+			String channel = text.substring(1, text.indexOf(' '));
+			String channelText = text.substring(text.indexOf(' ') + 1);
+			
+			client.enqueueTask(new CommunicationTask(new ClientMessage("chat", "send", channelText, channel), (success, msg) -> {
 				Platform.runLater(() -> {
-					listView.getItems().add(client.getUserID() + ": " + text);
+					if (success && msg.getDomain().equals("chat")) {
+						listView.getItems().add("[#" + channel + "] " + client.getUserID() + ": " + channelText);
+					} else {
+						listView.getItems().add(msg == null ? "Fehler" : msg.toString());
+					}
 				});
+			}));
+		} else {
+			client.enqueueTask(new CommunicationTask(new ClientMessage("chat", "send", text), (success, msg) -> {
+				if (success) {
+					Platform.runLater(() -> {
+						listView.getItems().add(client.getUserID() + ": " + text);
+					});
+				}
+			}));
+		}
+		
+		getChatTextField().setText("");
+	}
+	
+	/**
+	 * Lädt die letzten Nachrichten der Lobby. Der Server schickt sie als Antwort auf "chat:join"
+	 */
+	public void requestLobbyHistory() {
+		client.enqueueTask(new CommunicationTask(new ClientMessage("chat", "join", "lobby"), (success, msg) -> {
+			if (success) {
+				Platform.runLater(() -> showHistory(msg));
 			}
 		}));
+	}
+
+	/**
+	 * Zeigt die Nachrichten aus einer "chat:history:channel[:absender:text]..." Antwort an
+	 * @param msg	Die Antwort des Servers
+	 */
+	private void showHistory(ServerMessage msg) {
+		if (msg == null || !msg.getCommand().equals("history") || msg.getArguments().isEmpty())
+			return;
 		
-		getChatTextField().setText("");
+		String channel = msg.getArguments().get(0);
+		String prefix = channel.equals("lobby") ? "" : "[#" + channel + "] ";
+		for (int i = 1; i + 1 < msg.getArguments().size(); i += 2) {
+			listView.getItems().add(prefix + msg.getArguments().get(i) + ": " + msg.getArguments().get(i + 1));
+		}
 	}
 	
 	public void didReceiveChatServerMessage(ServerMessage msg) {
 		System.out.println("Chat message: " + msg);
 		Platform.runLater(() -> {
-			listView.getItems().add(msg.getCommand() + ": " + msg.getArguments().get(0));
+			// chat:<Absender>:<Text>[:<Channel>]
+			if (msg.getArguments().size() > 1) {
+				listView.getItems().add("[#" + msg.getArguments().get(1) + "] " + msg.getCommand() + ": " + msg.getArguments().get(0));
+			} else {
+				listView.getItems().add(msg.getCommand() + ": " + msg.getArguments().get(0));
+			}
 		});
 	}
 
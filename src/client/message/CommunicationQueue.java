@@ -1,37 +1,87 @@
 package client.message;
 
-import java.util.ArrayList;
+import java.util.ArrayDeque;
+import java.util.HashMap;
 
 /**
- * Eine Warteschlange für Tasks an den Server
+ * Eine Warteschlange für Tasks an den Server.
+ * Jeder Task erhält eine Request-ID. Es können bis zu {@link #getMaxInFlight()} Tasks gleichzeitig
+ * unterwegs sein, die Antworten werden über die ID wieder dem richtigen Task zugeordnet.
  * @author Lukas
  *
  */
-public class CommunicationQueue extends ArrayList<CommunicationTask> {
-	
-	private static final long serialVersionUID = -6894890621879980947L;
-	
-	public void addTask(CommunicationTask task) {
-		this.add(task);
-	}
-	
-	public void abortAllTasks() {
-		for (CommunicationTask task : this) {
+public class CommunicationQueue {
+	public static final int DEFAULT_MAX_IN_FLIGHT = 4;
+
+	private ArrayDeque<CommunicationTask> pending = new ArrayDeque<>();
+	private HashMap<Integer, CommunicationTask> inFlight = new HashMap<>();
+	private int maxInFlight;
+	private int nextRequestId = 1;
+
+	public CommunicationQueue() {
+		this(DEFAULT_MAX_IN_FLIGHT);
+	}
+
+	public CommunicationQueue(int maxInFlight) {
+		this.maxInFlight = Math.max(1, maxInFlight);
+	}
+
+	/**
+	 * Stellt einen Task in die Warteschlange und vergibt ihm eine Request-ID
+	 * @param task	Der Task
+	 */
+	public synchronized void addTask(CommunicationTask task) {
+		task.setRequestId(nextRequestId);
+		nextRequestId = nextRequestId == Integer.MAX_VALUE ? 1 : nextRequestId + 1;
+		pending.add(task);
+	}
+
+	/**
+	 * Gibt den nächsten Task zurück, der gesendet werden darf, und markiert ihn als unterwegs
+	 * @return	Der Task oder null, falls keiner wartet oder bereits genug Tasks unterwegs sind
+	 */
+	public synchronized CommunicationTask nextTaskToSend() {
+		if (inFlight.size() >= maxInFlight || pending.isEmpty())
+			return null;
+
+		CommunicationTask task = pending.poll();
+		inFlight.put(task.getRequestId(), task);
+		return task;
+	}
+
+	/**
+	 * Entfernt den Task, auf den der Server geantwortet hat
+	 * @param requestId	Die ID aus der Antwort
+	 * @return	Der Task oder null, wenn kein Task mit dieser ID unterwegs ist
+	 */
+	public synchronized CommunicationTask completeTask(int requestId) {
+		return inFlight.remove(requestId);
+	}
+
+	public synchronized void abortAllTasks() {
+		for (CommunicationTask task : inFlight.values()) {
 			task.abortTask();
 		}
+		for (CommunicationTask task : pending) {
+			task.abortTask();
+		}
+		inFlight.clear();
+		pending.clear();
 	}
-	
-	public int count() {
-		return this.size();
+
+	public synchronized int count() {
+		return pending.size() + inFlight.size();
 	}
-	
-	public CommunicationTask currentTask() {
-		if (this.size() == 0)
-			return null;
-		return this.get(0);
+
+	public synchronized int size() {
+		return count();
 	}
-	
-	public void removeCurrentTask() {
-		this.remove(0);
+
+	public synchronized int inFlightCount() {
+		return inFlight.size();
+	}
+
+	public int getMaxInFlight() {
+		return maxInFlight;
 	}
 }
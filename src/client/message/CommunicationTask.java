@@ -21,6 +21,7 @@ public class CommunicationTask extends Observable {
 	private boolean sent;
 	private boolean completed;
 	private boolean encrypt;
+	private int requestId;
 	private ServerMessage response;
 	private HashMap<String, Object> userInfo = new HashMap<>();
 	private ResponseRunnable<Boolean, ServerMessage> completedRunnable;
@@ -129,6 +130,14 @@ public class CommunicationTask extends Observable {
 		this.completedRunnable = completedRunnable;
 	}
 
+	public int getRequestId() {
+		return requestId;
+	}
+
+	public void setRequestId(int requestId) {
+		this.requestId = requestId;
+	}
+
 	public boolean isEncrypt() {
 		return encrypt;
 	}
@@ -137,10 +146,22 @@ public class CommunicationTask extends Observable {
 		this.encrypt = encrypt;
 	}
 	
+	/**
+	 * Baut die Zeile, die an den Server geschickt wird: "id@nachricht". Die ID steht unverschlüsselt
+	 * vor der Nachricht, damit die Antwort ohne Entschlüsseln zugeordnet werden kann.
+	 * @param engine	Der Kryptographiemotor
+	 * @return	Die Zeile oder null, falls nicht verschlüsselt werden konnte
+	 */
 	public String constructMessage(CryptoEngine engine) {
 		String message = this.getMessage().construct();
 		if (encrypt) {
 			message = engine.encrypt(message);
+			if (message == null)
+				return null;
+		}
+		
+		if (requestId > 0) {
+			message = requestId + "@" + message;
 		}
 		
 		return message;
@@ -149,6 +170,7 @@ public class CommunicationTask extends Observable {
 	@Override
 	public String toString() {
 		StringBuilder builder = new StringBuilder("CommunicationTask <");
+		builder.append("id = " + requestId + ", ");
 		builder.append("message = " + message + ", ");
 		if (sent) {
 			builder.append("task sent, ");
@@ -68,6 +68,11 @@ public class ServerMessage extends Message {
 			case "chat":
 			break;
 			
+			case "lobby":
+				valid = valid && (this.getCommand().equals("changes") // Änderungen an der Spieleliste
+								  || this.getCommand().equals("stale")); // Änderungen verworfen, Liste neu laden
+			break;
+			
 			case "success": // Kontextbezogene Nachrichten
 			case "error":
 				valid = valid && true;
@@ -1,15 +1,28 @@
 package server;
 
-import server.controllers.GameController;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
 import server.controllers.ServerController;
+import server.engine.OpeningBookBuilder;
+import server.models.BotSettings;
+import server.models.ChatHistory;
+import server.models.ServerModel;
 
 public class Main {
 	private ServerController server;
 
-	public void start(boolean test, boolean log){
-		this.server = new ServerController(log);
+	public void start(boolean test, boolean log, boolean stats, int chatHistory, Path openingBook, BotSettings bots){
+		this.server = new ServerController(log, ServerModel.DEFAULT_PORT, chatHistory, bots);
+		if(openingBook != null && !server.getModel().loadOpeningBook(openingBook)){
+			System.err.println("Could not load the opening book " + openingBook);
+		}
 		if(test){
-			server.getModel().getGames().add(new GameController("Test", server.getModel().getLogger()));
+			server.createGame("Test");
+		}
+		if(stats){
+			server.startStatsReport(10);
 		}
 		server.start();
 	}
@@ -17,16 +30,43 @@ public class Main {
 	public static void main(String[] args) {
 		boolean test = false;
 		boolean log = false;
+		boolean stats = false;
+		int chatHistory = ChatHistory.DEFAULT_CAPACITY;
+		BotSettings bots = new BotSettings();
+		Path openingBook = Paths.get(OpeningBookBuilder.DEFAULT_FILE);
+		if(!Files.exists(openingBook)){
+			openingBook = null;
+		}
 		if(args.length > 0){
 			for(int i = 0; i < args.length; i++){
 				if(args[i].equals("-t")){
 					test = true;
 				} else if (args[i].equals("-l")) {
 					log = true;
+				} else if (args[i].equals("-s")) {
+					stats = true;
+				} else if (args[i].equals("-c") && i + 1 < args.length) {
+					// chat messages kept per channel, 0 disables the history
+					chatHistory = Math.max(0, Integer.parseInt(args[++i]));
+				} else if (args[i].equals("-b") && i + 1 < args.length) {
+					// opening book written by server.engine.OpeningBookBuilder
+					openingBook = Paths.get(args[++i]);
+				} else if (args[i].equals("-a") && i + 1 < args.length) {
+					// seconds until a bot joins a waiting player, 0 disables bots
+					bots.setJoinTimeoutSeconds(Math.max(0, Integer.parseInt(args[++i])));
+				} else if (args[i].equals("-e") && i + 1 < args.length) {
+					// threads all bots share
+					bots.setThreads(Math.max(1, Integer.parseInt(args[++i])));
+				} else if (args[i].equals("-r")) {
+					// bots play Monte Carlo tree search
+					bots.setMonteCarlo(true);
+				} else if (args[i].equals("-m") && i + 1 < args.length) {
+					// think time per bot move
+					bots.setMoveBudgetMillis(Math.max(0, Long.parseLong(args[++i])));
 				}
 			}
 		}
 		Main main = new Main();
-		main.start(test, log);
+		main.start(test, log, stats, chatHistory, openingBook, bots);
 	}
 }
@@ -0,0 +1,98 @@
+package server.com;
+
+import java.util.EnumSet;
+import java.util.concurrent.atomic.LongAdder;
+
+import server.controllers.LogController;
+import server.controllers.PlayerController;
+import server.metrics.Histogram;
+import server.metrics.MetricsRegistry;
+import server.models.PlayerState;
+
+/**
+ * Routes received messages to their {@link CommandHandler} by opcode. Every
+ * command is registered together with the player states it is allowed in.
+ */
+public class CommandDispatcher {
+	private static class Registration {
+		private final CommandHandler handler;
+		private final EnumSet<PlayerState> allowed;
+		private final LongAdder invocations;
+		private final Histogram latency;
+
+		private Registration(CommandHandler handler, EnumSet<PlayerState> allowed, LongAdder invocations,
+				Histogram latency) {
+			this.handler = handler;
+			this.allowed = allowed;
+			this.invocations = invocations;
+			this.latency = latency;
+		}
+	}
+
+	private final Registration[] registrations = new Registration[Opcode.count()];
+	private final LogController logger;
+	private final MetricsRegistry metrics;
+	private final LongAdder rejected;
+
+	public CommandDispatcher(LogController logger, MetricsRegistry metrics) {
+		this.logger = logger;
+		this.metrics = metrics;
+		this.rejected = metrics.counter("command.rejected");
+	}
+
+	/**
+	 * Registers the handler of a command. Must be done before the first
+	 * player connects.
+	 *
+	 * @param opcode
+	 * @param handler
+	 * @param first
+	 *            a state the command is allowed in
+	 * @param rest
+	 *            further states the command is allowed in
+	 */
+	public void register(Opcode opcode, CommandHandler handler, PlayerState first, PlayerState... rest) {
+		registrations[opcode.getId()] = new Registration(handler, EnumSet.of(first, rest),
+				metrics.counter("command." + opcode + ".count"), metrics.histogram("command." + opcode + ".latency"));
+	}
+
+	/**
+	 * Runs the handler of the message if the command is known and allowed in
+	 * the given state. A handler which throws is logged and answered with an
+	 * error.
+	 *
+	 * @param player
+	 * @param message
+	 * @param state
+	 * @return whether a handler ran
+	 */
+	public boolean dispatch(PlayerController player, MessageEnvelope message, PlayerState state) {
+		Opcode opcode = message.getOpcode();
+		Registration registration = opcode == null ? null : registrations[opcode.getId()];
+		if (registration == null || !registration.allowed.contains(state)) {
+			rejected.increment();
+			logger.log("Player " + player.getModel().getName(), "Received uncertain in " + state, null,
+					message.getText());
+			if (message.getRequestId() > 0) {
+				player.getCom().replyError(message, CommunicationErrors.unknownErr);
+			}
+			return false;
+		}
+		logger.log("Player " + player.getModel().getName(), "Received", null, opcode.toString());
+		long start = System.nanoTime();
+		try {
+			registration.handler.handle(player, message, state);
+		} catch (RuntimeException e) {
+			// a broken command must not end the thread of the player
+			logger.log("Player " + player.getModel().getName(), "Failed " + opcode + ": " + e, null,
+					message.getText());
+			if (message.getRequestId() > 0) {
+				player.getCom().replyError(message, CommunicationErrors.unknownErr);
+			}
+		} finally {
+			registration.invocations.increment();
+			registration.latency.recordSince(start);
+		}
+		return true;
+	}
+}
@@ -0,0 +1,13 @@
+package server.com;
+
+import server.controllers.PlayerController;
+import server.models.PlayerState;
+
+/**
+ * Handles one protocol command. A new command only needs a new handler
+ * registered in the {@link CommandDispatcher}.
+ */
+@FunctionalInterface
+public interface CommandHandler {
+	public void handle(PlayerController player, MessageEnvelope message, PlayerState state);
+}
@@ -6,7 +6,15 @@ public enum CommunicationErrors {
 	notYetConnected("error:Noch nicht mit dem Server verbunden"),
 	gameExists("error:Ein Spiel mit dem selben Namen existier bereits, bitte wähle einene anderen Namen!"),
 	gameFull("error:full"),
-	emptyChatMessage("error:Chat Message was empty");
+	emptyChatMessage("error:Chat Message was empty"),
+	invalidMove("error:Ungültiger Zug"),
+	matchCancelled("error:Schnelles Spiel abgebrochen"),
+	alreadyQueued("error:Du wartest bereits auf ein Spiel"),
+	invalidChannel("error:Ungültiger Channel-Name"),
+	notInChannel("error:Nicht im Channel"),
+	invalidBoard("error:Ungültige Spielfeldgröße"),
+	notYourTurn("error:Du bist nicht am Zug"),
+	noOpponent("error:Noch kein Gegner im Spiel");
 
 	private final String errorMessage;
 
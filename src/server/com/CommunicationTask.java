@@ -5,8 +5,12 @@ public class CommunicationTask {
 	private boolean receiv = false;
 	private boolean encrypt = true;
 	private boolean wildcard = false;
+	private int requestId = 0;
+	private long queuedAt;
+	private OutboundQueue.Kind kind = OutboundQueue.Kind.CONTROL;
 	private String message;
 	private String attr;
+	private MessageEnvelope envelope;
 
 	public CommunicationTask(String message) {
 		this.message = message;
@@ -48,6 +52,30 @@ public class CommunicationTask {
 		this.message = message;
 	}
 
+	public int getRequestId() {
+		return requestId;
+	}
+
+	/**
+	 * Marks this task as the answer to the request with the given id
+	 *
+	 * @param requestId
+	 */
+	public void setRequestId(int requestId) {
+		this.requestId = requestId;
+	}
+
+	/**
+	 * @return the line written to the socket, prefixed with the request id if
+	 *         this task answers a request
+	 */
+	public String getFrame() {
+		if (requestId > 0) {
+			return requestId + "@" + message;
+		}
+		return message;
+	}
+
 	public String getAttr() {
 		return attr;
 	}
@@ -56,6 +84,14 @@ public class CommunicationTask {
 		this.attr = attr;
 	}
 
+	public MessageEnvelope getEnvelope() {
+		return envelope;
+	}
+
+	public void setEnvelope(MessageEnvelope envelope) {
+		this.envelope = envelope;
+	}
+
 	public boolean isWildcard() {
 		return wildcard;
 	}
@@ -67,4 +103,23 @@ public class CommunicationTask {
 	public void setUnfinished() {
 		this.finished = false;
 	}
+
+	/**
+	 * @return when the task was put into the outbound queue, in nanoseconds
+	 */
+	public long getQueuedAt() {
+		return queuedAt;
+	}
+
+	public void setQueuedAt(long queuedAt) {
+		this.queuedAt = queuedAt;
+	}
+
+	public OutboundQueue.Kind getKind() {
+		return kind;
+	}
+
+	public void setKind(OutboundQueue.Kind kind) {
+		this.kind = kind;
+	}
 }
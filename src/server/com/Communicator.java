@@ -1,37 +1,87 @@
 package server.com;
 
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
 
 import crypto.CryptoEngine;
 import crypto.CryptoEngineEnvType;
 
 import server.controllers.LogController;
+import server.metrics.MetricsRegistry;
 import server.models.PlayerModel;
 
 public class Communicator {
-	private List<CommunicationTask> sendTasks = Collections.synchronizedList(new ArrayList<CommunicationTask>());
+	private OutboundQueue sendTasks;
 	private List<CommunicationTask> receivTask = Collections.synchronizedList(new ArrayList<CommunicationTask>());
-	private CryptoEngine crypto = new CryptoEngine(CryptoEngineEnvType.server);
+	private volatile CryptoEngine crypto;
 	private LogController logger;
 	private PlayerModel player;
+	private OutboundLimits limits;
+	private volatile long writeStartedAt = 0;
+	private AtomicBoolean closing = new AtomicBoolean(false);
 
-	public Communicator(LogController logger, PlayerModel player) {
+	private LongAdder dropped;
+	private LongAdder coalesced;
+	private LongAdder overflowDisconnects;
+	private LongAdder writes;
+	private LongAdder written;
+
+	public Communicator(LogController logger, PlayerModel player, MetricsRegistry metrics) {
+		this(logger, player, metrics, new OutboundLimits());
+	}
+
+	public Communicator(LogController logger, PlayerModel player, MetricsRegistry metrics, OutboundLimits limits) {
 		this.logger = logger;
 		this.player = player;
+		this.limits = limits;
+		this.sendTasks = new OutboundQueue(metrics);
+		this.dropped = metrics.counter("outbound.dropped");
+		this.coalesced = metrics.counter("outbound.coalesced");
+		this.overflowDisconnects = metrics.counter("outbound.overflowDisconnects");
+		this.writes = metrics.counter("output.writes");
+		this.written = metrics.counter("output.messages");
+		LongAdder writes = this.writes;
+		LongAdder written = this.written;
+		metrics.gauge("output.writesPerThousandMessages", () -> {
+			long messages = written.sum();
+			return messages == 0 ? 0 : writes.sum() * 1000 / messages;
+		});
+	}
+
+	/**
+	 * The engine is created on first use, so players that never connect (or
+	 * never send encrypted messages) do not load the key pair.
+	 *
+	 * @return
+	 */
+	private CryptoEngine crypto() {
+		CryptoEngine engine = crypto;
+		if (engine == null) {
+			synchronized (this) {
+				if (crypto == null) {
+					crypto = new CryptoEngine(CryptoEngineEnvType.server);
+				}
+				engine = crypto;
+			}
+		}
+		return engine;
 	}
 
 	public String exportPublikKey() throws IOException{
-		return crypto.exportPublicKey();
+		return crypto().exportPublicKey();
 	}
 
 	public void setCryptoKey(String keyAsString){
-		byte[] key = crypto.rsaDecrypt(keyAsString, crypto.getKeyPair().getPrivate());
-		crypto.setKey(key);
+		byte[] key = crypto().rsaDecrypt(keyAsString, crypto().getKeyPair().getPrivate());
+		crypto().setKey(key);
 	}
 
 	public void addReceivTask(CommunicationTask task, boolean encrypt) {
@@ -45,21 +95,159 @@ public class Communicator {
 
 	public String getDecryptedMessage(CommunicationTask task) {
 		if (task.isEncrypt()) {
-			return crypto.decrypt(task.getMessage());
+			return crypto().decrypt(task.getMessage());
 		} else {
 			return task.getMessage();
 		}
 	}
 
+	/**
+	 * Queues the task without ever blocking. If the client does not read fast
+	 * enough and the queue is over its budget, the task is dropped, coalesced
+	 * or the connection is closed, see {@link OutboundLimits}.
+	 *
+	 * @param task
+	 */
 	public void addSendTask(CommunicationTask task) {
 		logger.log("Communicator from "+player.getName(), "New Send Task", task, null);
+		task.setKind(OutboundQueue.kindOf(task.getMessage()));
 		if(task.isEncrypt()){
-			task.setMessage(crypto.encrypt(task.getMessage()));
+			task.setMessage(crypto().encrypt(task.getMessage()));
 		}
 		task.setReceiv(false);
-		synchronized (sendTasks) {
-			sendTasks.add(task);
+		if(!sendTasks.hasRoom(limits, task.getMessage().length()) && !handleOverflow(task)){
+			return;
+		}
+		sendTasks.offer(task);
+	}
+
+	/**
+	 * @param task
+	 * @return whether the task is queued anyway
+	 */
+	private boolean handleOverflow(CommunicationTask task) {
+		OverflowPolicy policy = OverflowPolicy.DISCONNECT;
+		if(task.getRequestId() == 0 && task.getKind() == OutboundQueue.Kind.CHAT){
+			policy = limits.getChatPolicy();
+		} else if(task.getRequestId() == 0 && task.getKind() == OutboundQueue.Kind.LOBBY){
+			policy = limits.getLobbyPolicy();
+		}
+		switch (policy) {
+		case DROP:
+			dropped.increment();
+			task.setFinished();
+			return false;
+		case COALESCE:
+			coalesced.add(sendTasks.clearPushes(task.getKind()));
+			if(task.getKind() != OutboundQueue.Kind.LOBBY){
+				// only the game list can be reloaded, other pushes are just dropped
+				task.setFinished();
+				return false;
+			}
+			// one marker instead of all changes, the client reloads the list
+			task.setMessage(task.isEncrypt() ? crypto().encrypt("lobby:stale") : "lobby:stale");
+			return true;
+		default:
+			if(closeConnection("outbound queue over budget")){
+				overflowDisconnects.increment();
+			}
+			task.setFinished();
+			return false;
+		}
+	}
+
+	/**
+	 * Closes the socket of a client which does not read. The input handler
+	 * then ends the connection like a lost one.
+	 *
+	 * @param reason
+	 * @return false if the connection was already closed
+	 */
+	public boolean closeConnection(String reason) {
+		if(!closing.compareAndSet(false, true)){
+			return false;
+		}
+		logger.log("Communicator from "+player.getName(), "Closing connection", null, reason);
+		try {
+			player.getPlayerSocket().close();
+		} catch (IOException e) {
+			e.printStackTrace();
 		}
+		return true;
+	}
+
+	/**
+	 * Called by the output handler around every write
+	 */
+	public void writeStarted() {
+		writeStartedAt = System.currentTimeMillis();
+	}
+
+	public void writeFinished() {
+		writeStartedAt = 0;
+	}
+
+	/**
+	 * @param now
+	 * @return how long the current write blocks or 0 if nothing is written
+	 */
+	public long getWriteBlockedMillis(long now) {
+		long started = writeStartedAt;
+		return started == 0 ? 0 : now - started;
+	}
+
+	public OutboundLimits getLimits() {
+		return limits;
+	}
+
+	/**
+	 * Waits for the next message to send, game messages first
+	 *
+	 * @param timeoutMillis
+	 * @return the message or null if none arrived in time
+	 * @throws InterruptedException
+	 */
+	public CommunicationTask takeSendTask(long timeoutMillis) throws InterruptedException {
+		return sendTasks.take(timeoutMillis);
+	}
+
+	/**
+	 * Waits for the next message and takes all others which are ready too, so
+	 * they can be written at once
+	 *
+	 * @param batch
+	 * @param timeoutMillis
+	 * @return the number of messages taken
+	 * @throws InterruptedException
+	 */
+	public int takeSendTasks(List<CommunicationTask> batch, long timeoutMillis) throws InterruptedException {
+		int taken = sendTasks.takeBatch(batch, timeoutMillis);
+		written.add(taken);
+		return taken;
+	}
+
+	/**
+	 * Counts the writes to the socket, which is about the number of system
+	 * calls, in output.writes
+	 *
+	 * @param socketOutput
+	 * @return
+	 */
+	public OutputStream countWrites(OutputStream socketOutput) {
+		LongAdder writes = this.writes;
+		return new FilterOutputStream(socketOutput) {
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				out.write(b, off, len);
+				writes.increment();
+			}
+
+			@Override
+			public void write(int b) throws IOException {
+				out.write(b);
+				writes.increment();
+			}
+		};
 	}
 
 	public CommunicationTask getCurrentTask(boolean receiv) {
@@ -74,15 +262,7 @@ public class Communicator {
 				}
 			}
 		} else {
-			synchronized (sendTasks) {
-				ListIterator<CommunicationTask> i = sendTasks.listIterator();
-				while(i.hasNext()){
-					CommunicationTask current = i.next();
-					if(!current.isFinished()){
-						return current;
-					}
-				}
-			}
+			return sendTasks.peek();
 		}
 		return null;
 	}
@@ -92,48 +272,33 @@ public class Communicator {
 	}
 
 	public String getAttr(CommunicationTask task) {
-		if (getDecryptedMessage(task).split(":").length == 3) {
-			return getDecryptedMessage(task).split(":")[2];
+		MessageEnvelope envelope = task.getEnvelope();
+		if (envelope != null && envelope.getArgCount() == 1) {
+			return envelope.getArg(0);
 		} else {
 			return null;
 		}
 	}
 
-	public boolean doesTaskMatch(CommunicationTask task, String input) {
-		String decryptTask = getDecryptedMessage(task);
-		String[] splitT = decryptTask.split(":");
-		String[] splitI = decryptMessage(input).split(":");
-		if (splitI.length > 0 && splitT.length > 0) {
-			if (splitI.length == splitT.length) {
-				for (int i = 0; i < 3; i++) {
-					if (!splitT[i].equals(splitI[i])) {
-						return false;
-					}
-				}
-				return true;
-			} else {
-				if (splitI.length > splitT.length) {
-					for (int i = 0; i < splitT.length; i++) {
-						if (!splitT[i].equals(splitI[i])) {
-							return false;
-						}
-					}
-					return true;
-				} else {
-					for (int i = 0; i < splitI.length; i++) {
-						if (!splitT[i].equals(splitI[i])) {
-							return false;
-						}
-					}
-				}
-			}
-		}
-		return false;
+	/**
+	 * Decrypts and splits a received line once. Everything after this works on
+	 * the returned envelope.
+	 *
+	 * @param input
+	 * @return
+	 */
+	public MessageEnvelope readEnvelope(String input) {
+		return new MessageEnvelope(input, MessageEnvelope.requestIdOf(input),
+				decryptMessage(MessageEnvelope.payloadOf(input)));
+	}
+
+	public boolean doesTaskMatch(CommunicationTask task, MessageEnvelope input) {
+		return input.startsWith(getDecryptedMessage(task).split(":"));
 	}
 
 	public String decryptMessage(String input) {
 		try {
-			return crypto.decrypt(input);
+			return crypto().decrypt(input);
 		} catch (Exception e) {
 			return input;
 		}
@@ -145,6 +310,23 @@ public class Communicator {
 		addSendTask(error);
 	}
 
+	/**
+	 * Sends the answer to a request, carrying the id of the request
+	 *
+	 * @param request
+	 * @param message
+	 */
+	public void reply(MessageEnvelope request, String message) {
+		CommunicationTask answer = new CommunicationTask(message);
+		answer.setEncrypt(true);
+		answer.setRequestId(request.getRequestId());
+		addSendTask(answer);
+	}
+
+	public void replyError(MessageEnvelope request, Enum<CommunicationErrors> er) {
+		reply(request, er.toString());
+	}
+
 	public void clearTasks(){
 		synchronized (receivTask) {
 			Iterator<CommunicationTask> i = receivTask.iterator();
@@ -152,16 +334,12 @@ public class Communicator {
 				CommunicationTask current = i.next();
 				if(current.isReceiv()){
 					current.setMessage("null:null");
+					current.setEnvelope(MessageEnvelope.EMPTY);
 					current.setFinished();
 				}
 			}
 		}
-		synchronized (sendTasks) {
-			Iterator<CommunicationTask> i = sendTasks.iterator();
-			while(i.hasNext()){
-				CommunicationTask current = i.next();
-				current.setFinished();
-			}
-		}
+		// answers are kept, the client waits for them
+		sendTasks.clearPushes();
 	}
 }
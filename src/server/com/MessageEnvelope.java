@@ -0,0 +1,166 @@
+package server.com;
+
+/**
+ * A received frame, decrypted and split exactly once when it is read from the
+ * socket. Matching, logging and dispatch all work on this envelope instead of
+ * decrypting and splitting the raw line again.
+ */
+public class MessageEnvelope {
+	public static final MessageEnvelope EMPTY = new MessageEnvelope("null:null", "null:null");
+
+	private static final String[] NO_ARGS = new String[0];
+
+	private final String raw;
+	private final int requestId;
+	private final String text;
+	private final String domain;
+	private final String command;
+	private final String[] args;
+	private final Opcode opcode;
+
+	public MessageEnvelope(String raw, String text) {
+		this(raw, 0, text);
+	}
+
+	/**
+	 * @param raw
+	 *            the line as it was read from the socket
+	 * @param requestId
+	 *            the id the client sent with the request or 0
+	 * @param text
+	 *            the decrypted line
+	 */
+	public MessageEnvelope(String raw, int requestId, String text) {
+		this.raw = raw;
+		this.requestId = requestId;
+		this.text = text;
+		String[] parts = text.split(":");
+		this.domain = parts[0];
+		if (parts.length > 1) {
+			this.command = parts[1];
+		} else {
+			this.command = null;
+		}
+		if (parts.length > 2) {
+			this.args = new String[parts.length - 2];
+			System.arraycopy(parts, 2, args, 0, args.length);
+		} else {
+			this.args = NO_ARGS;
+		}
+		this.opcode = command == null ? null : Opcode.lookup(domain, command);
+	}
+
+	/**
+	 * Reads the request id of a frame in the form "id@payload". The id is sent
+	 * in clear text in front of the (encrypted) payload, so frames can be
+	 * correlated without decrypting them.
+	 *
+	 * @param frame
+	 * @return the id or 0 if the frame has none
+	 */
+	public static int requestIdOf(String frame) {
+		int at = frame.indexOf('@');
+		if (at <= 0 || at > 9) {
+			return 0;
+		}
+		for (int i = 0; i < at; i++) {
+			if (!Character.isDigit(frame.charAt(i))) {
+				return 0;
+			}
+		}
+		return Integer.parseInt(frame.substring(0, at));
+	}
+
+	/**
+	 * @param frame
+	 * @return the frame without its request id
+	 */
+	public static String payloadOf(String frame) {
+		if (requestIdOf(frame) == 0) {
+			return frame;
+		}
+		return frame.substring(frame.indexOf('@') + 1);
+	}
+
+	/**
+	 * Checks whether the given expected parts are a prefix of this message,
+	 * e.g. "connection:connect" matches "connection:connect:Lukas".
+	 *
+	 * @param expected
+	 * @return
+	 */
+	public boolean startsWith(String[] expected) {
+		if (expected.length == 0 || expected.length > getPartCount()) {
+			return false;
+		}
+		for (int i = 0; i < expected.length; i++) {
+			if (!expected[i].equals(getPart(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public int getPartCount() {
+		return (command == null ? 1 : 2) + args.length;
+	}
+
+	public String getPart(int index) {
+		switch (index) {
+		case 0:
+			return domain;
+		case 1:
+			return command;
+		default:
+			return args[index - 2];
+		}
+	}
+
+	public boolean hasCommand() {
+		return command != null;
+	}
+
+	public String getRaw() {
+		return raw;
+	}
+
+	/**
+	 * @return the id the answer has to carry or 0 if the client did not send
+	 *         one
+	 */
+	public int getRequestId() {
+		return requestId;
+	}
+
+	public String getText() {
+		return text;
+	}
+
+	public String getDomain() {
+		return domain;
+	}
+
+	public String getCommand() {
+		return command;
+	}
+
+	/**
+	 * @return the interned command or null if the command is unknown
+	 */
+	public Opcode getOpcode() {
+		return opcode;
+	}
+
+	public int getArgCount() {
+		return args.length;
+	}
+
+	public String getArg(int index) {
+		return args[index];
+	}
+
+	@Override
+	public String toString() {
+		return text;
+	}
+}
@@ -0,0 +1,83 @@
+package server.com;
+
+import java.util.HashMap;
+
+/**
+ * An interned (domain, command) pair. Every known command exists exactly once,
+ * so received messages can be dispatched by their id instead of building and
+ * switching over "domain:command" strings.
+ */
+public final class Opcode {
+	private static final HashMap<String, HashMap<String, Opcode>> registry = new HashMap<>();
+	private static int nextId = 0;
+
+	public static final Opcode CHAT_SEND = register("chat", "send");
+	public static final Opcode CHAT_JOIN = register("chat", "join");
+	public static final Opcode CHAT_LEAVE = register("chat", "leave");
+	public static final Opcode INFO_REQUEST_GAMES = register("info", "requestGames");
+	public static final Opcode INFO_SUBSCRIBE = register("info", "subscribe");
+	public static final Opcode INFO_UNSUBSCRIBE = register("info", "unsubscribe");
+	public static final Opcode GAME_JOIN = register("game", "join");
+	public static final Opcode GAME_SETSTONE = register("game", "setstone");
+	public static final Opcode GAME_FINISHED = register("game", "finished");
+	public static final Opcode GAME_QUICKMATCH = register("game", "quickmatch");
+	public static final Opcode GAME_CANCELMATCH = register("game", "cancelmatch");
+	public static final Opcode GAME_HINT = register("game", "hint");
+	public static final Opcode SERVER_NEWGAME = register("server", "newgame");
+	public static final Opcode CONNECTION_DISCONNECT = register("connection", "disconnect");
+
+	private final int id;
+	private final String domain;
+	private final String command;
+	private final String name;
+
+	private Opcode(int id, String domain, String command) {
+		this.id = id;
+		this.domain = domain;
+		this.command = command;
+		this.name = domain + ":" + command;
+	}
+
+	private static synchronized Opcode register(String domain, String command) {
+		Opcode opcode = new Opcode(nextId++, domain, command);
+		registry.computeIfAbsent(domain, d -> new HashMap<>()).put(command, opcode);
+		return opcode;
+	}
+
+	/**
+	 * Looks up a known command. Unknown pairs are not interned, so clients can
+	 * not grow the registry.
+	 *
+	 * @param domain
+	 * @param command
+	 * @return the opcode or null if the command is unknown
+	 */
+	public static Opcode lookup(String domain, String command) {
+		HashMap<String, Opcode> commands = registry.get(domain);
+		if (commands == null) {
+			return null;
+		}
+		return commands.get(command);
+	}
+
+	public static synchronized int count() {
+		return nextId;
+	}
+
+	public int getId() {
+		return id;
+	}
+
+	public String getDomain() {
+		return domain;
+	}
+
+	public String getCommand() {
+		return command;
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+}
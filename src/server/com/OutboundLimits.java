@@ -0,0 +1,70 @@
+package server.com;
+
+/**
+ * Budget of the outbound queue of one connection and what to do when a slow
+ * client exceeds it. Game messages and answers always disconnect on
+ * overflow, only pushes can be dropped or coalesced.
+ */
+public class OutboundLimits {
+	public static final int DEFAULT_MAX_MESSAGES = 1000;
+	public static final int DEFAULT_MAX_BYTES = 1 << 20;
+	public static final long DEFAULT_WRITE_TIMEOUT_MILLIS = 10000;
+
+	private int maxMessages = DEFAULT_MAX_MESSAGES;
+	private int maxBytes = DEFAULT_MAX_BYTES;
+	private long writeTimeoutMillis = DEFAULT_WRITE_TIMEOUT_MILLIS;
+	private OverflowPolicy chatPolicy = OverflowPolicy.DROP;
+	private OverflowPolicy lobbyPolicy = OverflowPolicy.COALESCE;
+
+	public int getMaxMessages() {
+		return maxMessages;
+	}
+
+	public void setMaxMessages(int maxMessages) {
+		this.maxMessages = maxMessages;
+	}
+
+	/**
+	 * @return the budget in characters of the encoded frames
+	 */
+	public int getMaxBytes() {
+		return maxBytes;
+	}
+
+	public void setMaxBytes(int maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * @return how long writing one frame may block before the connection is
+	 *         closed
+	 */
+	public long getWriteTimeoutMillis() {
+		return writeTimeoutMillis;
+	}
+
+	public void setWriteTimeoutMillis(long writeTimeoutMillis) {
+		this.writeTimeoutMillis = writeTimeoutMillis;
+	}
+
+	public OverflowPolicy getChatPolicy() {
+		return chatPolicy;
+	}
+
+	public void setChatPolicy(OverflowPolicy chatPolicy) {
+		this.chatPolicy = chatPolicy;
+	}
+
+	/**
+	 * COALESCE replaces the waiting lobby pushes by one lobby:stale
+	 *
+	 * @return
+	 */
+	public OverflowPolicy getLobbyPolicy() {
+		return lobbyPolicy;
+	}
+
+	public void setLobbyPolicy(OverflowPolicy lobbyPolicy) {
+		this.lobbyPolicy = lobbyPolicy;
+	}
+}
@@ -0,0 +1,237 @@
+package server.com;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import server.metrics.Histogram;
+import server.metrics.MetricsRegistry;
+
+/**
+ * The messages waiting to be written to one player. Game messages and
+ * answers go through the control lane and overtake chat and lobby messages
+ * in the bulk lane, so a chat burst does not delay a move.
+ *
+ * Every lane is FIFO. The bulk lane is served after
+ * {@link #CONTROL_BURST} control messages in a row or once its oldest
+ * message waited {@link #MAX_BULK_DELAY_MILLIS}, so it is never starved.
+ * The queue counts messages and characters, the budget is enforced by the
+ * {@link Communicator}.
+ */
+public class OutboundQueue {
+	public enum Lane {
+		CONTROL, BULK
+	}
+
+	public enum Kind {
+		CONTROL(Lane.CONTROL), CHAT(Lane.BULK), LOBBY(Lane.BULK), LIST(Lane.BULK);
+
+		private final Lane lane;
+
+		private Kind(Lane lane) {
+			this.lane = lane;
+		}
+
+		public Lane getLane() {
+			return lane;
+		}
+	}
+
+	public static final int CONTROL_BURST = 16;
+	public static final long MAX_BULK_DELAY_MILLIS = 250;
+	/**
+	 * A batch is not filled beyond this, so a message never waits for more
+	 * than one such write
+	 */
+	public static final int MAX_BATCH_BYTES = 64 * 1024;
+
+	private static final long MAX_BULK_DELAY_NANOS = TimeUnit.MILLISECONDS.toNanos(MAX_BULK_DELAY_MILLIS);
+
+	private final ArrayDeque<CommunicationTask> control = new ArrayDeque<>();
+	private final ArrayDeque<CommunicationTask> bulk = new ArrayDeque<>();
+	private int controlStreak = 0;
+	private long bytes = 0;
+
+	private final Histogram controlDelay;
+	private final Histogram bulkDelay;
+	private final LongAdder bulkPromoted;
+
+	public OutboundQueue(MetricsRegistry metrics) {
+		this.controlDelay = metrics.histogram("outbound.control.delay");
+		this.bulkDelay = metrics.histogram("outbound.bulk.delay");
+		this.bulkPromoted = metrics.counter("outbound.bulk.promoted");
+	}
+
+	/**
+	 * Chat, lobby pushes and game lists are bulk, everything else is control
+	 *
+	 * @param message
+	 *            the message before it is encrypted
+	 * @return
+	 */
+	public static Kind kindOf(String message) {
+		if (message.startsWith("chat:")) {
+			return Kind.CHAT;
+		} else if (message.startsWith("lobby:")) {
+			return Kind.LOBBY;
+		} else if (message.startsWith("success:requested") || message.startsWith("success:notmodified")) {
+			return Kind.LIST;
+		}
+		return Kind.CONTROL;
+	}
+
+	/**
+	 * @param task
+	 *            a task with its kind set
+	 */
+	public synchronized void offer(CommunicationTask task) {
+		task.setQueuedAt(System.nanoTime());
+		if (task.getKind().getLane() == Lane.BULK) {
+			bulk.add(task);
+		} else {
+			control.add(task);
+		}
+		bytes += task.getMessage().length();
+		notifyAll();
+	}
+
+	/**
+	 * Waits for the next message
+	 *
+	 * @param timeoutMillis
+	 * @return the message or null if none arrived in time
+	 * @throws InterruptedException
+	 */
+	public synchronized CommunicationTask take(long timeoutMillis) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + timeoutMillis;
+		while (control.isEmpty() && bulk.isEmpty()) {
+			long left = deadline - System.currentTimeMillis();
+			if (left <= 0) {
+				return null;
+			}
+			wait(left);
+		}
+		return poll(System.nanoTime());
+	}
+
+	/**
+	 * Waits for the next message and takes it together with all messages
+	 * which are ready as well, up to {@link #MAX_BATCH_BYTES}. Never waits for
+	 * a batch to fill.
+	 *
+	 * @param batch
+	 *            the messages are added here in the order to send them
+	 * @param timeoutMillis
+	 * @return the number of messages taken
+	 * @throws InterruptedException
+	 */
+	public synchronized int takeBatch(List<CommunicationTask> batch, long timeoutMillis) throws InterruptedException {
+		CommunicationTask first = take(timeoutMillis);
+		if (first == null) {
+			return 0;
+		}
+		batch.add(first);
+		int taken = 1;
+		long batchBytes = first.getMessage().length();
+		long now = System.nanoTime();
+		while (batchBytes < MAX_BATCH_BYTES && !(control.isEmpty() && bulk.isEmpty())) {
+			CommunicationTask next = poll(now);
+			batch.add(next);
+			batchBytes += next.getMessage().length();
+			taken++;
+		}
+		return taken;
+	}
+
+	private CommunicationTask poll(long now) {
+		CommunicationTask task;
+		if (bulk.isEmpty()) {
+			task = control.poll();
+			controlStreak++;
+			controlDelay.record(now - task.getQueuedAt());
+		} else if (control.isEmpty()) {
+			task = bulk.poll();
+			controlStreak = 0;
+			bulkDelay.record(now - task.getQueuedAt());
+		} else if (controlStreak >= CONTROL_BURST || now - bulk.peek().getQueuedAt() > MAX_BULK_DELAY_NANOS) {
+			task = bulk.poll();
+			controlStreak = 0;
+			bulkPromoted.increment();
+			bulkDelay.record(now - task.getQueuedAt());
+		} else {
+			task = control.poll();
+			controlStreak++;
+			controlDelay.record(now - task.getQueuedAt());
+		}
+		bytes -= task.getMessage().length();
+		return task;
+	}
+
+	/**
+	 * @return the message {@link #take(long)} would most likely return next
+	 */
+	public synchronized CommunicationTask peek() {
+		CommunicationTask task = control.peek();
+		return task != null ? task : bulk.peek();
+	}
+
+	/**
+	 * Drops all messages which are not answers to a request and marks them as
+	 * finished
+	 */
+	public synchronized void clearPushes() {
+		clearPushes(control, null);
+		clearPushes(bulk, null);
+	}
+
+	/**
+	 * Drops the waiting pushes of one kind and marks them as finished
+	 *
+	 * @param kind
+	 * @return the number of dropped messages
+	 */
+	public synchronized int clearPushes(Kind kind) {
+		return clearPushes(kind.getLane() == Lane.BULK ? bulk : control, kind);
+	}
+
+	private int clearPushes(ArrayDeque<CommunicationTask> lane, Kind kind) {
+		int removed = 0;
+		Iterator<CommunicationTask> i = lane.iterator();
+		while (i.hasNext()) {
+			CommunicationTask task = i.next();
+			if (task.getRequestId() == 0 && (kind == null || task.getKind() == kind)) {
+				task.setFinished();
+				bytes -= task.getMessage().length();
+				i.remove();
+				removed++;
+			}
+		}
+		return removed;
+	}
+
+	/**
+	 * @param limits
+	 * @param frameLength
+	 * @return whether a frame of the given length fits into the budget
+	 */
+	public synchronized boolean hasRoom(OutboundLimits limits, int frameLength) {
+		return control.size() + bulk.size() < limits.getMaxMessages() && bytes + frameLength <= limits.getMaxBytes();
+	}
+
+	public synchronized int size() {
+		return control.size() + bulk.size();
+	}
+
+	/**
+	 * @return the characters of all waiting frames
+	 */
+	public synchronized long bytes() {
+		return bytes;
+	}
+
+	public synchronized int size(Lane lane) {
+		return lane == Lane.BULK ? bulk.size() : control.size();
+	}
+}
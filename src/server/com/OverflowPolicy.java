@@ -0,0 +1,21 @@
+package server.com;
+
+/**
+ * What happens to a message for a player whose outbound queue is over its
+ * budget. Answers to requests are never dropped, the client waits for them.
+ */
+public enum OverflowPolicy {
+	/**
+	 * the message is not sent
+	 */
+	DROP,
+	/**
+	 * all waiting messages of the same kind are replaced by one marker which
+	 * tells the client to reload
+	 */
+	COALESCE,
+	/**
+	 * the connection is closed
+	 */
+	DISCONNECT
+}
@@ -0,0 +1,188 @@
+package server.controllers;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import server.com.CommunicationTask;
+import server.engine.Engine;
+import server.engine.MctsEngine;
+import server.engine.SearchEngine;
+import server.engine.SearchResult;
+import server.metrics.Histogram;
+import server.metrics.MetricsRegistry;
+import server.models.BoardModel;
+import server.models.BotSettings;
+
+/**
+ * Seats a {@link BotPlayer} in games where a player waited alone for longer
+ * than the join timeout, and computes the moves of all bots.
+ *
+ * Bots think on a few low priority threads of their own with a single
+ * threaded search (alpha-beta or, for weaker bots, Monte Carlo), so however many bots play, they never take more cores
+ * than configured and never slow down the game actors. The time a move waits
+ * for a thread counts against its budget. When the queue is full the bot
+ * plays the free column nearest to the center instead of falling behind, the
+ * game actor never searches.
+ */
+public class BotController {
+	private final ServerController server;
+	private final BotSettings settings;
+	private final Engine engine;
+	/**
+	 * null if the bots play Monte Carlo
+	 */
+	private final SearchEngine alphaBeta;
+	private final ThreadPoolExecutor thinkers;
+	private final ScheduledExecutorService timer;
+	private final AtomicInteger created = new AtomicInteger();
+
+	private final LongAdder games;
+	private final LongAdder moves;
+	private final LongAdder shed;
+	private final Histogram thinkTime;
+	private final Histogram queueDelay;
+
+	public BotController(ServerController server, BotSettings settings) {
+		this.server = server;
+		this.settings = settings;
+		MetricsRegistry metrics = server.getModel().getMetrics();
+		if (settings.isMonteCarlo()) {
+			this.alphaBeta = null;
+			this.engine = new MctsEngine(metrics, "bot.mcts", 1, MctsEngine.DEFAULT_EXPLORATION);
+		} else {
+			this.alphaBeta = new SearchEngine(metrics, "bot.engine", settings.getTableMegabytes(), 1);
+			this.engine = alphaBeta;
+		}
+		AtomicInteger threadCount = new AtomicInteger();
+		int threads = Math.max(1, settings.getThreads());
+		this.thinkers = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(Math.max(1, settings.getQueueCapacity())), r -> {
+					Thread t = new Thread(r, "Server:bot" + threadCount.getAndIncrement());
+					t.setDaemon(true);
+					// the human games go first
+					t.setPriority(Thread.MIN_PRIORITY);
+					return t;
+				});
+		this.thinkers.allowCoreThreadTimeOut(true);
+		this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "Server:botTimer");
+			t.setDaemon(true);
+			return t;
+		});
+		this.games = metrics.counter("bot.games");
+		this.moves = metrics.counter("bot.moves");
+		this.shed = metrics.counter("bot.shed");
+		this.thinkTime = metrics.histogram("bot.think");
+		this.queueDelay = metrics.histogram("bot.queueDelay");
+		metrics.gauge("bot.queued", () -> thinkers.getQueue().size());
+		metrics.gauge("bot.threads", () -> threads);
+	}
+
+	/**
+	 * Lets a bot take the second seat if the player is still waiting alone
+	 * after the join timeout
+	 *
+	 * @param game
+	 * @param waiting
+	 *            the player on the first seat
+	 */
+	public void scheduleJoin(GameController game, PlayerController waiting) {
+		if (settings.getJoinTimeoutSeconds() <= 0) {
+			return;
+		}
+		timer.schedule(() -> join(game, waiting), settings.getJoinTimeoutSeconds(), TimeUnit.SECONDS);
+	}
+
+	private void join(GameController game, PlayerController waiting) {
+		if (game.getGame().getPlayerOne() != waiting || !game.canJoin()) {
+			return;
+		}
+		BotPlayer bot = new BotPlayer(server, this, "Bot" + created.incrementAndGet());
+		// a bot never takes the first seat, it does not wait for players
+		if (server.joinGameAgainst(game, waiting, bot)) {
+			games.increment();
+			server.getModel().getLogger().log("Server", "bot joined", null, game.getGame().getName());
+			// answers the move the player made while waiting
+			game.tell(game::sendFirstSet);
+		}
+	}
+
+	/**
+	 * Queues the answer of the bot. Only call on the game actor.
+	 *
+	 * @param bot
+	 */
+	void opponentMoved(BotPlayer bot) {
+		GameController game = bot.getModel().getGame();
+		if (game == null) {
+			return;
+		}
+		BoardModel board = game.getGame().getBoard().copy();
+		long queuedAt = System.nanoTime();
+		try {
+			thinkers.execute(() -> think(bot, game, board, queuedAt));
+		} catch (RejectedExecutionException e) {
+			shed.increment();
+			play(bot, game, nearestToCenter(board));
+		}
+	}
+
+	/**
+	 * @param board
+	 * @return the free column nearest to the center, -1 if the board is full
+	 */
+	private static int nearestToCenter(BoardModel board) {
+		for (int column : SearchEngine.centerFirst(board.getColumns())) {
+			if (board.canPlay(column)) {
+				return column;
+			}
+		}
+		return -1;
+	}
+
+	private void think(BotPlayer bot, GameController game, BoardModel board, long queuedAt) {
+		long waited = System.nanoTime() - queuedAt;
+		queueDelay.record(waited);
+		if (bot.getModel().getGame() != game) {
+			// the game ended while the move was queued
+			return;
+		}
+		long budget = Math.max(0, settings.getMoveBudgetMillis() - TimeUnit.NANOSECONDS.toMillis(waited));
+		long start = System.nanoTime();
+		int column = search(board, budget).getColumn();
+		thinkTime.record(System.nanoTime() - start);
+		game.tell(() -> play(bot, game, column));
+	}
+
+	private SearchResult search(BoardModel board, long budgetMillis) {
+		if (alphaBeta != null) {
+			// the book may be loaded after the bots were created
+			alphaBeta.setOpeningBook(server.getModel().getOpeningBook());
+		}
+		return engine.search(board, budgetMillis);
+	}
+
+	/**
+	 * Sets the stone like {@link server.controllers.handlers.SetStoneHandler},
+	 * on the game actor
+	 */
+	private void play(BotPlayer bot, GameController game, int column) {
+		if (column >= 0 && game.setStone(bot, column)) {
+			moves.increment();
+			game.notifyOtherPlayer(new CommunicationTask("game:setstone:" + column));
+			if (game.getGame().isFull()) {
+				game.checkForWinner();
+			}
+		}
+	}
+
+	public Engine getEngine() {
+		return engine;
+	}
+}
@@ -0,0 +1,49 @@
+package server.controllers;
+
+import server.com.CommunicationTask;
+import server.com.Communicator;
+import server.models.PlayerModel;
+
+/**
+ * A seat taken by the server. The bot has no socket and no threads of its
+ * own: its communicator hands the moves of the opponent to the
+ * {@link BotController} instead of sending them, everything else sent to
+ * the bot is dropped.
+ */
+public class BotPlayer extends PlayerController {
+
+	public BotPlayer(ServerController server, BotController bots, String name) {
+		super(server, new PlayerModel(server.getModel().getLogger(),
+				player -> new BotCommunicator(server, player, bots)));
+		getModel().setName(name);
+		((BotCommunicator) getCom()).bot = this;
+	}
+
+	private static final class BotCommunicator extends Communicator {
+		private final BotController bots;
+		private BotPlayer bot;
+
+		private BotCommunicator(ServerController server, PlayerModel player, BotController bots) {
+			super(server.getModel().getLogger(), player, server.getModel().getMetrics());
+			this.bots = bots;
+		}
+
+		@Override
+		public void addSendTask(CommunicationTask task) {
+			// only ever called on the game actor, see GameController
+			if (task.getMessage().startsWith("game:setstone:")) {
+				bots.opponentMoved(bot);
+			}
+			task.setFinished();
+		}
+
+		@Override
+		public void clearTasks() {
+		}
+
+		@Override
+		public boolean closeConnection(String reason) {
+			return false;
+		}
+	}
+}
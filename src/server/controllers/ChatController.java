@@ -0,0 +1,156 @@
+package server.controllers;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import server.metrics.MetricsRegistry;
+import server.models.ChatChannel;
+import server.models.ChatHistory;
+
+/**
+ * Named chat channels. A message only goes to the members of its channel and
+ * is delivered by the fan-out workers, so a busy channel is spread over all
+ * of them and quiet players do not pay for it.
+ *
+ * Every player in the lobby is a member of {@link #LOBBY}; other channels are
+ * created on the first join and dropped when the last member leaves. A
+ * player which joins a channel gets its recent messages in one reply.
+ */
+public class ChatController {
+	public static final String LOBBY = "lobby";
+	public static final int MAX_NAME_LENGTH = 32;
+
+	private final ConcurrentHashMap<String, ChatChannel> channels = new ConcurrentHashMap<>();
+	private final FanOutController fanOut;
+	private final LogController logger;
+	private final int historyCapacity;
+	private final LongAdder messages;
+	private final LongAdder replays;
+
+	public ChatController(FanOutController fanOut, LogController logger, MetricsRegistry metrics) {
+		this(fanOut, logger, metrics, ChatHistory.DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param fanOut
+	 * @param logger
+	 * @param metrics
+	 * @param historyCapacity
+	 *            messages kept per channel, 0 disables the history
+	 */
+	public ChatController(FanOutController fanOut, LogController logger, MetricsRegistry metrics,
+			int historyCapacity) {
+		this.fanOut = fanOut;
+		this.logger = logger;
+		this.historyCapacity = historyCapacity;
+		this.messages = metrics.counter("chat.messages");
+		this.replays = metrics.counter("chat.history.replays");
+		channels.put(LOBBY, new ChatChannel(LOBBY, historyCapacity));
+		metrics.gauge("chat.channels", () -> channels.size());
+	}
+
+	/**
+	 * @param name
+	 * @return whether the name can be used for a channel
+	 */
+	public static boolean isValidName(String name) {
+		if (name == null || name.isEmpty() || name.length() > MAX_NAME_LENGTH) {
+			return false;
+		}
+		for (int i = 0; i < name.length(); i++) {
+			char c = name.charAt(i);
+			if (!Character.isLetterOrDigit(c) && c != '-' && c != '_') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public void join(String name, PlayerController player) {
+		// compute() keeps join and the removal of an empty channel apart
+		channels.compute(name, (key, channel) -> {
+			if (channel == null) {
+				channel = new ChatChannel(key, historyCapacity);
+			}
+			channel.getMembers().add(player);
+			return channel;
+		});
+	}
+
+	/**
+	 * @param name
+	 * @param player
+	 * @return whether the player was a member
+	 */
+	public boolean leave(String name, PlayerController player) {
+		boolean[] removed = new boolean[1];
+		channels.computeIfPresent(name, (key, channel) -> {
+			removed[0] = channel.getMembers().remove(player);
+			return channel.size() == 0 && !LOBBY.equals(key) ? null : channel;
+		});
+		return removed[0];
+	}
+
+	/**
+	 * Removes the player from all channels, e.g. when it disconnects
+	 *
+	 * @param player
+	 */
+	public void leaveAll(PlayerController player) {
+		for (ChatChannel channel : channels.values()) {
+			if (channel.isMember(player)) {
+				leave(channel.getName(), player);
+			}
+		}
+	}
+
+	public ChatChannel getChannel(String name) {
+		return channels.get(name);
+	}
+
+	public boolean isMember(String name, PlayerController player) {
+		ChatChannel channel = channels.get(name);
+		return channel != null && channel.isMember(player);
+	}
+
+	/**
+	 * Builds the backlog of the channel as one message:
+	 * chat:history:channel[:sender:text]...
+	 *
+	 * @param name
+	 * @return
+	 */
+	public String history(String name) {
+		StringBuilder message = new StringBuilder("chat:history:").append(name);
+		ChatChannel channel = channels.get(name);
+		if (channel != null) {
+			channel.getHistory().appendTo(message, ':');
+		}
+		replays.increment();
+		return message.toString();
+	}
+
+	/**
+	 * Sends the text to all other members of the channel and keeps it in the
+	 * history of the channel. Lobby messages are sent as chat:sender:text,
+	 * all others as chat:sender:text:channel.
+	 *
+	 * @param name
+	 * @param sender
+	 * @param text
+	 * @return false if the sender is not a member of the channel
+	 */
+	public boolean publish(String name, PlayerController sender, String text) {
+		ChatChannel channel = channels.get(name);
+		if (channel == null || !channel.isMember(sender)) {
+			return false;
+		}
+		String entry = sender.getModel().getName() + ":" + text;
+		String message = LOBBY.equals(name) ? "chat:" + entry : "chat:" + entry + ":" + name;
+		logger.log("Chat " + name, "publishing", null, message);
+		messages.increment();
+		channel.getHistory().append(entry);
+		fanOut.send(message, true, channel.getMembers(), sender);
+		return true;
+	}
+}
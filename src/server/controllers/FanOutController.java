@@ -0,0 +1,126 @@
+package server.controllers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import server.com.CommunicationTask;
+import server.metrics.Histogram;
+import server.metrics.MetricsRegistry;
+
+/**
+ * Delivers one message to many players on a small pool of worker threads, so
+ * the sender does not encrypt the message for every recipient itself.
+ *
+ * Every player always belongs to the same worker and every worker runs its
+ * jobs in order, so a player receives the messages in the order they were
+ * handed in. The queue of each worker is bounded; when it is full the
+ * message is dropped for the players of that worker.
+ */
+public class FanOutController {
+	public static final int QUEUE_CAPACITY = 1024;
+
+	private final ThreadPoolExecutor[] workers;
+	private final LongAdder messages;
+	private final LongAdder deliveries;
+	private final LongAdder dropped;
+	private final Histogram latency;
+
+	public FanOutController(MetricsRegistry metrics) {
+		this(metrics, Math.min(8, Runtime.getRuntime().availableProcessors()));
+	}
+
+	public FanOutController(MetricsRegistry metrics, int workerCount) {
+		workers = new ThreadPoolExecutor[Math.max(1, workerCount)];
+		for (int i = 0; i < workers.length; i++) {
+			String name = "Server:fanOut" + i;
+			workers[i] = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+					new ArrayBlockingQueue<Runnable>(QUEUE_CAPACITY), r -> {
+						Thread t = new Thread(r, name);
+						t.setDaemon(true);
+						return t;
+					});
+		}
+		this.messages = metrics.counter("fanout.messages");
+		this.deliveries = metrics.counter("fanout.deliveries");
+		this.dropped = metrics.counter("fanout.dropped");
+		this.latency = metrics.histogram("fanout.latency");
+		metrics.gauge("fanout.queued", () -> {
+			long queued = 0;
+			for (ThreadPoolExecutor worker : workers) {
+				queued += worker.getQueue().size();
+			}
+			return queued;
+		});
+	}
+
+	/**
+	 * Hands the message to the workers and returns at once. Every recipient
+	 * gets its own task, as every player encrypts with its own key.
+	 *
+	 * @param message
+	 * @param encrypt
+	 * @param recipients
+	 * @param except
+	 *            a player which does not get the message, e.g. the sender
+	 */
+	public void send(String message, boolean encrypt, Iterable<PlayerController> recipients,
+			PlayerController except) {
+		long start = System.nanoTime();
+		List<List<PlayerController>> partitions = new ArrayList<>(workers.length);
+		for (int i = 0; i < workers.length; i++) {
+			partitions.add(null);
+		}
+		for (PlayerController recipient : recipients) {
+			if (recipient.equals(except)) {
+				continue;
+			}
+			int worker = workerOf(recipient);
+			if (partitions.get(worker) == null) {
+				partitions.set(worker, new ArrayList<>());
+			}
+			partitions.get(worker).add(recipient);
+		}
+		messages.increment();
+		for (int i = 0; i < partitions.size(); i++) {
+			List<PlayerController> partition = partitions.get(i);
+			if (partition == null) {
+				continue;
+			}
+			try {
+				workers[i].execute(() -> deliver(message, encrypt, partition, start));
+			} catch (RejectedExecutionException e) {
+				dropped.add(partition.size());
+			}
+		}
+	}
+
+	private void deliver(String message, boolean encrypt, List<PlayerController> partition, long start) {
+		for (PlayerController recipient : partition) {
+			CommunicationTask task = new CommunicationTask(message);
+			task.setEncrypt(encrypt);
+			try {
+				recipient.getCom().addSendTask(task);
+				deliveries.increment();
+			} catch (RuntimeException e) {
+				// e.g. a player which has not finished the key exchange yet
+				dropped.increment();
+			}
+			latency.recordSince(start);
+		}
+	}
+
+	private int workerOf(PlayerController player) {
+		int h = System.identityHashCode(player);
+		h ^= h >>> 16;
+		return (h & 0x7fffffff) % workers.length;
+	}
+
+	public int getWorkerCount() {
+		return workers.length;
+	}
+}
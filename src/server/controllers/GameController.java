@@ -1,33 +1,140 @@
 package server.controllers;
 
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import server.com.CommunicationTask;
+import server.models.BoardModel;
 import server.models.GameModel;
 
+/**
+ * Runs a game as an actor. Everything which reads or changes the game state
+ * after the seats are taken goes through {@link #tell(Runnable)} and runs on
+ * the game executor, one message at a time, so the game itself needs no
+ * locks.
+ */
 public class GameController {
+	private static final class Message {
+		private final Runnable action;
+		private final long enqueuedAt = System.nanoTime();
+
+		private Message(Runnable action) {
+			this.action = action;
+		}
+	}
+
 	private GameModel game;
+	private final GameExecutor executor;
+	private final ConcurrentLinkedQueue<Message> mailbox = new ConcurrentLinkedQueue<>();
+	private final AtomicBoolean scheduled = new AtomicBoolean(false);
+	/**
+	 * Whether the game was announced in the lobby, quick matches are not
+	 */
+	private volatile boolean listed = false;
 
-	public GameController(String name, LogController logger){
-		game = new GameModel(name, logger);
+	public GameController(String name, LogController logger, GameExecutor executor){
+		this(name, logger, executor, new BoardModel());
 	}
 
-	public boolean canJoin() {
-		if (game.getPlayerTwo() == null) {
-			return true;
+	public GameController(String name, LogController logger, GameExecutor executor, BoardModel board){
+		game = new GameModel(name, logger, board);
+		this.executor = executor;
+	}
+
+	/**
+	 * Queues the action in the mailbox of the game. Actions of one game never
+	 * run at the same time and run in the order they were told.
+	 *
+	 * @param action
+	 */
+	public void tell(Runnable action) {
+		mailbox.add(new Message(action));
+		executor.enqueued();
+		schedule();
+	}
+
+	private void schedule() {
+		if (scheduled.compareAndSet(false, true)) {
+			executor.execute(this::drain);
 		}
-		return false;
 	}
 
+	private void drain() {
+		for (int i = 0; i < GameExecutor.BATCH; i++) {
+			Message message = mailbox.poll();
+			if (message == null) {
+				break;
+			}
+			executor.run(message.action, message.enqueuedAt);
+		}
+		scheduled.set(false);
+		// a message told after the last poll, or the rest of a long mailbox
+		if (!mailbox.isEmpty()) {
+			schedule();
+		}
+	}
+
+	public int getMailboxDepth() {
+		return mailbox.size();
+	}
+
+	public boolean isListed() {
+		return listed;
+	}
+
+	public void setListed(boolean listed) {
+		this.listed = listed;
+	}
+
+	public boolean canJoin() {
+		return !game.isFull() && !game.isFinished();
+	}
+
+	/**
+	 * Claims a seat for the player. Safe to call from any number of player
+	 * threads at once, every seat is given out only once.
+	 *
+	 * @param controller
+	 * @return the seat (1 or 2) or -1 if the game is full
+	 */
 	public int join(PlayerController controller) {
-		if (game.getPlayerOne() == null) {
-			game.setPlayerOne(controller);
-			return 1;
-		} else {
-			game.getPlayerOne().getModel().setPlaying(true);
-			controller.getModel().setInGame(true);
-			controller.getModel().setPlaying(true);
-			game.setPlayerTwo(controller);
-			return 2;
+		int seat = game.claimSeat(controller);
+		if (seat == 2) {
+			seated(controller);
+		}
+		return seat;
+	}
+
+	/**
+	 * Claims the second seat, but only while the opponent waits alone on the
+	 * first one
+	 *
+	 * @param opponent
+	 * @param controller
+	 * @return whether the seat was taken
+	 */
+	public boolean joinAgainst(PlayerController opponent, PlayerController controller) {
+		if (!game.claimSeatTwo(opponent, controller)) {
+			return false;
 		}
+		seated(controller);
+		return true;
+	}
+
+	private void seated(PlayerController two) {
+		game.getPlayerOne().getModel().setPlaying(true);
+		two.getModel().setInGame(true);
+		two.getModel().setPlaying(true);
+	}
+
+	/**
+	 * @param seat
+	 * @return the answer to a join: success:joined:seat:name:columns:rows:winLength
+	 */
+	public String joinedMessage(int seat) {
+		BoardModel board = game.getBoard();
+		return "success:joined:" + seat + ":" + game.getName() + ":" + board.getColumns() + ":" + board.getRows() + ":"
+				+ board.getWinLength();
 	}
 
 	public void notifyOtherPlayer(CommunicationTask communicationTask) {
@@ -76,8 +183,24 @@ public class GameController {
 		return game;
 	}
 
-	public boolean setStone(int parseInt) {
-		return game.setStone(parseInt);
+	/**
+	 * Only call on the actor, see {@link #tell(Runnable)}
+	 *
+	 * @param player
+	 * @param column
+	 * @return false if it is not the turn of the player or the move is invalid
+	 */
+	public boolean setStone(PlayerController player, int column) {
+		return game.setStone(player, column);
+	}
+
+	public void checkForWinner() {
+		// only the stone just set can have decided the game
+		if (game.getBoard().lastStoneWins()) {
+			notifyWinnerAndLoser();
+		} else if (game.getBoard().isTie()) {
+			notifyAllTie();
+		}
 	}
 
 	public void notifyWinnerAndLoser() {
@@ -107,33 +230,42 @@ public class GameController {
 			game.getPlayerTwo().getCom().clearTasks();
 			CommunicationTask tie = new CommunicationTask("game:finished:2");
 			tie.setEncrypt(true);
+			CommunicationTask tieTwo = new CommunicationTask("game:finished:2");
+			tieTwo.setEncrypt(true);
 			game.getPlayerOne().getCom().addSendTask(tie);
-			game.getPlayerTwo().getCom().addSendTask(tie);
+			game.getPlayerTwo().getCom().addSendTask(tieTwo);
 			cleanAndDestroy();
 		}
 
 	}
 
 	public void notifyError(){
+		PlayerController one = game.getPlayerOne();
+		if(one == null){
+			// already finished and cleaned up
+			return;
+		}
 		CommunicationTask err = new CommunicationTask("game:finished:4");
 		err.setEncrypt(true);
-		game.getPlayerOne().getCom().clearTasks();
-		game.getPlayerOne().getCom().addSendTask(err);
-		if(game.getPlayerTwo() != null){
+		one.getCom().clearTasks();
+		one.getCom().addSendTask(err);
+		if(game.releaseSeatOne(one)){
+			one.getModel().setInGame(false);
+		} else if(game.getPlayerTwo() != null){
+			CommunicationTask errTwo = new CommunicationTask("game:finished:4");
+			errTwo.setEncrypt(true);
 			game.getPlayerTwo().getCom().clearTasks();
-			game.getPlayerTwo().getCom().addSendTask(err);
+			game.getPlayerTwo().getCom().addSendTask(errTwo);
 			cleanAndDestroy();
-		} else {
-			game.getPlayerOne().getModel().setInGame(false);
-			game.setPlayerOne(null);
 		}
 	}
 
 	private void cleanAndDestroy(){
-		game.getPlayerOne().leaveGame();
-		game.getPlayerTwo().leaveGame();
-		game.setPlayerOne(null);
-		game.setPlayerTwo(null);
+		PlayerController one = game.getPlayerOne();
+		PlayerController two = game.getPlayerTwo();
+		one.leaveGame();
+		two.leaveGame();
+		game.releaseSeats();
 	}
 
 }
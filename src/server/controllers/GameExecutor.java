@@ -0,0 +1,75 @@
+package server.controllers;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.LongAdder;
+
+import server.metrics.Histogram;
+import server.metrics.MetricsRegistry;
+
+/**
+ * The shared work-stealing pool all games run on. Every game is an actor: its
+ * messages are processed one after the other, but different games run in
+ * parallel on all cores. See {@link GameController#tell(Runnable)}.
+ */
+public class GameExecutor {
+	/**
+	 * Messages a game processes before it hands its worker to the next game
+	 */
+	public static final int BATCH = 32;
+
+	private final ForkJoinPool pool;
+	private final LongAdder queued = new LongAdder();
+	private final LongAdder processed;
+	private final LongAdder failed;
+	private final Histogram processing;
+	private final Histogram mailboxDelay;
+
+	public GameExecutor(MetricsRegistry metrics) {
+		this(metrics, Runtime.getRuntime().availableProcessors());
+	}
+
+	public GameExecutor(MetricsRegistry metrics, int parallelism) {
+		// async mode: the games are independent tasks which are never joined
+		this.pool = new ForkJoinPool(Math.max(1, parallelism), forkJoinPool -> {
+			ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(forkJoinPool);
+			t.setName("Server:game" + t.getPoolIndex());
+			t.setDaemon(true);
+			return t;
+		}, null, true);
+		this.processed = metrics.counter("game.actor.messages");
+		this.failed = metrics.counter("game.actor.failures");
+		this.processing = metrics.histogram("game.actor.processing");
+		this.mailboxDelay = metrics.histogram("game.actor.mailboxDelay");
+		metrics.gauge("game.mailbox.depth", () -> queued.sum());
+	}
+
+	void execute(Runnable drain) {
+		pool.execute(drain);
+	}
+
+	void enqueued() {
+		queued.increment();
+	}
+
+	/**
+	 * Runs one message of a game and records how long it waited and ran
+	 *
+	 * @param action
+	 * @param enqueuedAt
+	 */
+	void run(Runnable action, long enqueuedAt) {
+		queued.decrement();
+		long start = System.nanoTime();
+		mailboxDelay.record(start - enqueuedAt);
+		try {
+			action.run();
+		} catch (RuntimeException e) {
+			// a broken message must not stop the game
+			failed.increment();
+			e.printStackTrace();
+		}
+		processed.increment();
+		processing.recordSince(start);
+	}
+}
@@ -0,0 +1,98 @@
+package server.controllers;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import server.engine.Analysis;
+import server.engine.AnalysisCache;
+import server.engine.SearchEngine;
+import server.metrics.Histogram;
+import server.metrics.MetricsRegistry;
+import server.models.BoardModel;
+
+/**
+ * Answers game:hint. A position asked before, in any game, is answered from
+ * the cache. Otherwise the position is analyzed on the thread of the asking
+ * player for at most the budget, and only a few analyses run at once; a hint
+ * which finds all of them busy for the whole budget gets a one ply analysis.
+ */
+public class HintController {
+	public static final long DEFAULT_BUDGET_MILLIS = 300;
+	public static final int DEFAULT_TABLE_MEGABYTES = 8;
+
+	private final SearchEngine engine;
+	private final AnalysisCache cache;
+	private final Semaphore running;
+	private final long budgetMillis;
+
+	private final LongAdder requests;
+	private final LongAdder cacheHits;
+	private final LongAdder shed;
+	private final Histogram computeTime;
+
+	public HintController(MetricsRegistry metrics) {
+		this(metrics, DEFAULT_BUDGET_MILLIS, SearchEngine.DEFAULT_THREADS, AnalysisCache.DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param metrics
+	 * @param budgetMillis
+	 *            the longest time one hint is computed
+	 * @param concurrent
+	 *            the hints computed at the same time
+	 * @param cacheCapacity
+	 *            the positions kept
+	 */
+	public HintController(MetricsRegistry metrics, long budgetMillis, int concurrent, int cacheCapacity) {
+		this.engine = new SearchEngine(metrics, "hint.engine", DEFAULT_TABLE_MEGABYTES, 1);
+		this.cache = new AnalysisCache(cacheCapacity);
+		this.running = new Semaphore(Math.max(1, concurrent));
+		this.budgetMillis = budgetMillis;
+		this.requests = metrics.counter("hint.requests");
+		this.cacheHits = metrics.counter("hint.cacheHits");
+		this.shed = metrics.counter("hint.shed");
+		this.computeTime = metrics.histogram("hint.compute");
+		metrics.gauge("hint.cached", cache::size);
+	}
+
+	/**
+	 * Blocks the calling thread for at most about twice the budget
+	 *
+	 * @param board
+	 *            a copy which nobody else changes
+	 * @return the scores for the player to move
+	 */
+	public Analysis hint(BoardModel board) {
+		requests.increment();
+		Analysis known = cache.get(board);
+		if (known != null) {
+			cacheHits.increment();
+			return known;
+		}
+		boolean permitted;
+		try {
+			permitted = running.tryAcquire(budgetMillis, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			permitted = false;
+		}
+		if (!permitted) {
+			// not cached, a deeper analysis answers the next one
+			shed.increment();
+			return engine.analyze(board, 0);
+		}
+		try {
+			Analysis analysis = engine.analyze(board, budgetMillis);
+			computeTime.record(analysis.getNanos());
+			cache.put(board, analysis);
+			return analysis;
+		} finally {
+			running.release();
+		}
+	}
+
+	public AnalysisCache getCache() {
+		return cache;
+	}
+}
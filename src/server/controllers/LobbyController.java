@@ -0,0 +1,174 @@
+package server.controllers;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import server.com.CommunicationTask;
+import server.metrics.Histogram;
+import server.metrics.MetricsRegistry;
+import server.models.ServerModel;
+
+/**
+ * Pushes changes of the game list to subscribed lobby players. Events are
+ * collected for a short window and sent as one "lobby:changes" message, so a
+ * busy lobby produces a small stream of deltas instead of full lists.
+ *
+ * Format: lobby:changes:+created,~filled,-removed:version, where version is
+ * the lobby snapshot version after the last of the changes. A client which
+ * loaded the list at that version or later already has them.
+ */
+public class LobbyController {
+	public static final long DEFAULT_WINDOW_MILLIS = 100;
+
+	private enum Change {
+		CREATED('+'), FILLED('~'), REMOVED('-');
+
+		private final char sign;
+
+		private Change(char sign) {
+			this.sign = sign;
+		}
+	}
+
+	private static class PendingChange {
+		private final boolean createdInWindow;
+		private Change last;
+		/**
+		 * The snapshot version of the last change
+		 */
+		private long version;
+
+		private PendingChange(Change first, long version) {
+			this.createdInWindow = first == Change.CREATED;
+			this.last = first;
+			this.version = version;
+		}
+	}
+
+	private final Set<PlayerController> subscribers = ConcurrentHashMap.newKeySet();
+	private final LinkedHashMap<String, PendingChange> pending = new LinkedHashMap<>();
+	private final ScheduledExecutorService flusher;
+	private final long windowMillis;
+	private final LogController logger;
+	private final ServerModel model;
+	private boolean flushScheduled = false;
+
+	private final LongAdder events;
+	private final LongAdder pushes;
+	private final Histogram flushTime;
+
+	public LobbyController(ServerModel model) {
+		this(model, DEFAULT_WINDOW_MILLIS);
+	}
+
+	public LobbyController(ServerModel model, long windowMillis) {
+		MetricsRegistry metrics = model.getMetrics();
+		this.model = model;
+		this.logger = model.getLogger();
+		this.windowMillis = windowMillis;
+		this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "Server:lobbyFeed");
+			t.setDaemon(true);
+			return t;
+		});
+		this.events = metrics.counter("lobby.events");
+		this.pushes = metrics.counter("lobby.pushes");
+		this.flushTime = metrics.histogram("lobby.flush");
+		metrics.gauge("lobby.subscribers", () -> subscribers.size());
+	}
+
+	public void subscribe(PlayerController player) {
+		subscribers.add(player);
+	}
+
+	public void unsubscribe(PlayerController player) {
+		subscribers.remove(player);
+	}
+
+	/**
+	 * Lists the game in the lobby snapshot and pushes it
+	 *
+	 * @param name
+	 */
+	public void gameCreated(String name) {
+		record(name, Change.CREATED);
+	}
+
+	/**
+	 * Takes the game from the lobby snapshot and pushes it as filled
+	 *
+	 * @param name
+	 */
+	public void gameFilled(String name) {
+		record(name, Change.FILLED);
+	}
+
+	/**
+	 * Takes the game from the lobby snapshot and pushes it as removed
+	 *
+	 * @param name
+	 */
+	public void gameRemoved(String name) {
+		record(name, Change.REMOVED);
+	}
+
+	private void record(String name, Change change) {
+		events.increment();
+		synchronized (pending) {
+			// the snapshot changes under the same lock, so every push carries
+			// a higher version than all changes pushed before it
+			long version = change == Change.CREATED ? model.openLobbyGame(name) : model.closeLobbyGame(name);
+			PendingChange current = pending.get(name);
+			if (current == null) {
+				pending.put(name, new PendingChange(change, version));
+			} else {
+				current.last = change;
+				current.version = version;
+			}
+			if (!flushScheduled) {
+				flushScheduled = true;
+				flusher.schedule(this::flush, windowMillis, TimeUnit.MILLISECONDS);
+			}
+		}
+	}
+
+	private void flush() {
+		long start = System.nanoTime();
+		StringBuilder changes = new StringBuilder();
+		long version = -1;
+		synchronized (pending) {
+			for (Map.Entry<String, PendingChange> e : pending.entrySet()) {
+				PendingChange change = e.getValue();
+				version = Math.max(version, change.version);
+				// a game which was created and filled or removed in the same
+				// window was never visible to the subscribers
+				if (change.createdInWindow && change.last != Change.CREATED) {
+					continue;
+				}
+				if (changes.length() > 0) {
+					changes.append(',');
+				}
+				changes.append(change.last.sign).append(e.getKey());
+			}
+			pending.clear();
+			flushScheduled = false;
+		}
+		if (changes.length() > 0) {
+			String message = "lobby:changes:" + changes + ":" + version;
+			logger.log("Lobby", "pushing changes", null, message);
+			for (PlayerController player : subscribers) {
+				if (player.getModel().isConnected() && !player.getModel().isInGame()) {
+					player.getCom().addSendTask(new CommunicationTask(message));
+					pushes.increment();
+				}
+			}
+		}
+		flushTime.recordSince(start);
+	}
+}
@@ -0,0 +1,272 @@
+package server.controllers;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import server.com.CommunicationErrors;
+import server.com.MessageEnvelope;
+import server.metrics.Histogram;
+import server.metrics.MetricsRegistry;
+import server.models.PlayerState;
+
+/**
+ * Pairs players which asked for a quick match. Player threads only append a
+ * ticket to a lock-free queue and wake the matcher; the single matcher thread
+ * owns the waiting list, pairs tickets and creates the game for them.
+ *
+ * Players with a rating are paired with players whose rating is inside their
+ * band. The band starts at {@link #BASE_BAND} and widens the longer a player
+ * waits, so nobody waits forever. Players without a rating match anyone.
+ */
+public class MatchmakingController {
+	public static final int NO_RATING = -1;
+	public static final int BASE_BAND = 50;
+	public static final int BAND_WIDENING_PER_SECOND = 100;
+	public static final String GAME_PREFIX = "quickmatch-";
+
+	private static final long RECHECK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+	private static final int WAITING = 0;
+	private static final int PAIRING = 1;
+	private static final int DONE = 2;
+
+	private static class Ticket {
+		private final PlayerController player;
+		private final MessageEnvelope request;
+		private final int rating;
+		private final long enqueued = System.nanoTime();
+		/**
+		 * WAITING, PAIRING while the matcher claims the pair, DONE once paired
+		 * or abandoned
+		 */
+		private final AtomicInteger state = new AtomicInteger(WAITING);
+
+		private Ticket(PlayerController player, MessageEnvelope request, int rating) {
+			this.player = player;
+			this.request = request;
+			this.rating = rating;
+		}
+
+		private boolean isDone() {
+			return state.get() == DONE;
+		}
+
+		private boolean isRated() {
+			return rating != NO_RATING;
+		}
+
+		private long band(long now) {
+			return BASE_BAND + BAND_WIDENING_PER_SECOND * (now - enqueued) / TimeUnit.SECONDS.toNanos(1);
+		}
+	}
+
+	private final ServerController server;
+	private final ConcurrentLinkedQueue<Ticket> incoming = new ConcurrentLinkedQueue<>();
+	private final ConcurrentHashMap<PlayerController, Ticket> queued = new ConcurrentHashMap<>();
+	// only touched by the matcher thread
+	private final ArrayList<Ticket> waiting = new ArrayList<>();
+	private final AtomicInteger gameCounter = new AtomicInteger();
+	private final Thread matcher;
+
+	private final LongAdder enqueuedCount;
+	private final LongAdder pairs;
+	private final LongAdder abandoned;
+	private final Histogram waitTime;
+	private volatile long pairsPerSecond;
+
+	public MatchmakingController(ServerController server) {
+		MetricsRegistry metrics = server.getModel().getMetrics();
+		this.server = server;
+		this.enqueuedCount = metrics.counter("matchmaking.enqueued");
+		this.pairs = metrics.counter("matchmaking.pairs");
+		this.abandoned = metrics.counter("matchmaking.abandoned");
+		this.waitTime = metrics.histogram("matchmaking.wait");
+		metrics.gauge("matchmaking.queued", () -> queued.size());
+		metrics.gauge("matchmaking.pairsPerSecond", () -> pairsPerSecond);
+		metrics.gauge("matchmaking.abandonPermille", () -> {
+			long all = enqueuedCount.sum();
+			return all == 0 ? 0 : abandoned.sum() * 1000 / all;
+		});
+		this.matcher = new Thread(this::run, "Server:matchmaking");
+		this.matcher.setDaemon(true);
+		this.matcher.start();
+	}
+
+	/**
+	 * Queues the player. The request is answered once the player is paired or
+	 * leaves the queue.
+	 *
+	 * @param player
+	 * @param request
+	 * @param rating
+	 *            the rating or {@link #NO_RATING}
+	 * @return false if the player is already queued
+	 */
+	public boolean enqueue(PlayerController player, MessageEnvelope request, int rating) {
+		Ticket ticket = new Ticket(player, request, rating);
+		if (queued.putIfAbsent(player, ticket) != null) {
+			return false;
+		}
+		enqueuedCount.increment();
+		incoming.add(ticket);
+		LockSupport.unpark(matcher);
+		return true;
+	}
+
+	/**
+	 * Takes the player out of the queue and answers its quick match request
+	 *
+	 * @param player
+	 * @return false if the player was not queued or is just being paired
+	 */
+	public boolean cancel(PlayerController player) {
+		Ticket ticket = queued.get(player);
+		if (ticket == null || !abandon(ticket)) {
+			return false;
+		}
+		player.getCom().replyError(ticket.request, CommunicationErrors.matchCancelled);
+		return true;
+	}
+
+	public boolean isQueued(PlayerController player) {
+		return queued.containsKey(player);
+	}
+
+	private boolean abandon(Ticket ticket) {
+		while (!ticket.state.compareAndSet(WAITING, DONE)) {
+			if (ticket.state.get() == DONE) {
+				return false;
+			}
+			// the matcher either pairs the ticket or gives it back at once
+			Thread.yield();
+		}
+		queued.remove(ticket.player, ticket);
+		abandoned.increment();
+		return true;
+	}
+
+	private void run() {
+		long second = System.nanoTime();
+		long pairsAtSecond = 0;
+		while (true) {
+			Ticket ticket;
+			while ((ticket = incoming.poll()) != null) {
+				waiting.add(ticket);
+			}
+			long now = System.nanoTime();
+			try {
+				match(now);
+			} catch (RuntimeException e) {
+				// one broken player must not stop the matchmaking
+				e.printStackTrace();
+			}
+			if (now - second >= TimeUnit.SECONDS.toNanos(1)) {
+				long total = pairs.sum();
+				pairsPerSecond = total - pairsAtSecond;
+				pairsAtSecond = total;
+				second = now;
+			}
+			if (waiting.isEmpty()) {
+				// woken by enqueue(), the timeout only keeps the rate current
+				LockSupport.parkNanos(this, TimeUnit.SECONDS.toNanos(1));
+			} else {
+				// bands widen with time, so look at the waiting players again
+				LockSupport.parkNanos(this, RECHECK_NANOS);
+			}
+		}
+	}
+
+	private void match(long now) {
+		ArrayList<Ticket> rated = new ArrayList<>();
+		ArrayList<Ticket> unrated = new ArrayList<>();
+		Iterator<Ticket> i = waiting.iterator();
+		while (i.hasNext()) {
+			Ticket ticket = i.next();
+			if (ticket.isDone()) {
+				i.remove();
+			} else if (ticket.player.getModel().getState() != PlayerState.LOBBY) {
+				// disconnected or joined another game while waiting
+				abandon(ticket);
+				i.remove();
+			} else if (ticket.isRated()) {
+				rated.add(ticket);
+			} else {
+				unrated.add(ticket);
+			}
+		}
+
+		// neighbours in rating order are the closest candidates
+		rated.sort(Comparator.comparingInt(t -> t.rating));
+		for (int r = 0; r + 1 < rated.size(); r++) {
+			Ticket a = rated.get(r);
+			Ticket b = rated.get(r + 1);
+			if (Math.abs(a.rating - b.rating) <= Math.min(a.band(now), b.band(now)) && pair(a, b, now)) {
+				r++;
+			}
+		}
+
+		// unrated players match anyone, oldest first
+		int u = 0;
+		for (; u + 1 < unrated.size(); u += 2) {
+			pair(unrated.get(u), unrated.get(u + 1), now);
+		}
+		if (u < unrated.size()) {
+			for (Ticket candidate : rated) {
+				if (pair(unrated.get(u), candidate, now)) {
+					break;
+				}
+			}
+		}
+		waiting.removeIf(Ticket::isDone);
+	}
+
+	private boolean pair(Ticket one, Ticket two, long now) {
+		if (!one.state.compareAndSet(WAITING, PAIRING)) {
+			return false;
+		}
+		if (!two.state.compareAndSet(WAITING, PAIRING)) {
+			// a cancel of one waits for this and then succeeds
+			one.state.set(WAITING);
+			return false;
+		}
+		one.state.set(DONE);
+		two.state.set(DONE);
+		GameController game = null;
+		String name = null;
+		while (game == null) {
+			name = GAME_PREFIX + gameCounter.incrementAndGet();
+			game = server.getModel().getGames().create(name, server.getModel().getLogger());
+		}
+		if (one.player.joinGame(game) != 1 || two.player.joinGame(game) != 2) {
+			// cannot happen, nobody else knows the game yet
+			server.removeGame(game);
+			one.player.getCom().replyError(one.request, CommunicationErrors.unknownErr);
+			two.player.getCom().replyError(two.request, CommunicationErrors.unknownErr);
+			dequeue(one, two);
+			return true;
+		}
+		one.player.getModel().setInGame(true);
+		server.getModel().getLogger().log("Matchmaking", "paired", null,
+				one.player.getModel().getName() + " vs " + two.player.getModel().getName() + " in " + name);
+		one.player.getCom().reply(one.request, game.joinedMessage(1));
+		two.player.getCom().reply(two.request, game.joinedMessage(2));
+		// the players count as queued until they are seated, see cancel()
+		dequeue(one, two);
+		waitTime.record(now - one.enqueued);
+		waitTime.record(now - two.enqueued);
+		pairs.increment();
+		return true;
+	}
+
+	private void dequeue(Ticket one, Ticket two) {
+		queued.remove(one.player, one);
+		queued.remove(two.player, two);
+	}
+}
@@ -1,15 +1,20 @@
 package server.controllers;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.PrintStream;
 import java.net.Socket;
+import java.util.ArrayList;
 
 import server.com.CommunicationErrors;
 import server.com.CommunicationTask;
 import server.com.Communicator;
+import server.com.MessageEnvelope;
+import server.com.OutboundQueue;
 import server.models.PlayerModel;
+import server.models.PlayerState;
 
 public class PlayerController {
 	private PlayerController controller;
@@ -17,9 +22,20 @@ public class PlayerController {
 	private ServerController server;
 
 	public PlayerController(ServerController server, LogController logger) {
+		this(server, new PlayerModel(server.getModel().getLogger(), server.getModel().getMetrics(),
+				server.getModel().getOutboundLimits()));
+	}
+
+	/**
+	 * @param server
+	 * @param model
+	 *            a model with its own communicator, see {@link BotPlayer}
+	 */
+	protected PlayerController(ServerController server, PlayerModel model) {
 		this.controller = this;
-		this.model = new PlayerModel(server.getModel().getLogger());
+		this.model = model;
 		this.server = server;
+		this.model.setStateListener(() -> server.updatePresence(this));
 	}
 
 	public void start() {
@@ -27,12 +43,14 @@ public class PlayerController {
 		(new Thread("Player" + playerC + ":mainThread") {
 			@Override
 			public void run() {
+				boolean wasConnected = false;
 				model.setName(Thread.currentThread().getName());
 				model.getLogger().log("Player " + model.getName(), "New Player Thread", null, null);
 				while (model.isServerRunning()) {
 					if (!model.isConnected() && !model.isInGame() && !model.isPlaying()) {
 						try {
 							if (initalConnection()) {
+								wasConnected = true;
 								model.setConnected(true);
 								server.newPlayer();
 							}
@@ -55,96 +73,23 @@ public class PlayerController {
 								e.printStackTrace();
 							}
 						}
-						String[] input = connected.getMessage().split(":");
-						if (input.length > 1) {
-							String msg = input[0] + ":" + input[1];
-							model.getLogger().log("Player " + model.getName(), "Checking in connected", connected, msg);
-							switch (msg) {
-							case "chat:send":
-								if (input.length > 2){
-									model.getLogger().log("Player " + model.getName(), "Received", connected, "chat:send");
-									CommunicationTask received = new CommunicationTask("chat:send:success");
-									received.setEncrypt(true);
-									model.getCommunicator().addSendTask(received);
-									CommunicationTask send = new CommunicationTask("chat:"+getModel().getName()+":"+input[2]);
-									server.notifyAllPlayer(send, controller);
-								} else {
-									model.getLogger().log("Player " + model.getName(), "Error: "+CommunicationErrors.emptyChatMessage, null, null);
-								}
-								break;
-							case "info:requestGames":
-								model.getLogger().log("Player " + model.getName(), "Received", connected,
-										"info:requestGames");
-								CommunicationTask success = new CommunicationTask(server.getModel().getAllGames());
-								success.setEncrypt(true);
-								model.getCommunicator().addSendTask(success);
-								break;
-							case "game:join":
-								model.getLogger().log("Player " + model.getName(), "Received", connected, "game:join");
-								if (input.length == 3) {
-									int joined = server.joinGame(input[2], controller);
-									if (joined != -1) {
-										model.getLogger().log("Player " + model.getName(), "Joined game", null,
-												input[2]);
-										if (joined == 2) {
-											model.setPlaying(true);
-										}
-										model.setInGame(true);
-										CommunicationTask success1 = new CommunicationTask("success:joined:" + joined);
-										success1.setEncrypt(true);
-										model.getCommunicator().addSendTask(success1);
-										if (joined == 2) {
-											model.getGame().sendFirstSet();
-										}
-									} else {
-										model.getLogger().log("Player " + model.getName(), "Join failed", connected,
-												null);
-										model.getCommunicator().sendErrorMessage(CommunicationErrors.unknownErr);
-									}
-								} else {
-									model.getLogger().log("Player " + model.getName(), "No game found", connected,
-											input[2]);
-									model.getCommunicator().sendErrorMessage(CommunicationErrors.gameFull);
-								}
-								break;
-
-							case "game:finished":
-								model.getLogger().log("Player " + model.getName(), "Received", connected,
-										"game:finished");
-								break;
-
-							case "server:newgame":
-								model.getLogger().log("Player " + model.getName(), "Received", connected,
-										"server:newGame");
-								if (input.length == 3) {
-									if (server.createGame(input[2])) {
-										CommunicationTask successG = new CommunicationTask("success:created");
-										successG.setEncrypt(true);
-										model.getCommunicator().addSendTask(successG);
-									} else {
-										model.getCommunicator().sendErrorMessage(CommunicationErrors.gameExists);
-									}
-								}
-								break;
-
-							case "connection:disconnect":
-								model.getLogger().log("Player " + model.getName(), "Received", connected,
-										"connection:disconnect");
-								model.setConnected(false);
-								break;
-
-							default:
-								model.getLogger().log("Player " + model.getName(), "Received uncertain", connected,
-										null);
-								break;
-							}
+						MessageEnvelope input = connected.getEnvelope();
+						if (connected.isFinished() && input.hasCommand()) {
+							model.getLogger().log("Player " + model.getName(), "Checking in connected", connected, null);
+							server.getDispatcher().dispatch(controller, input, PlayerState.LOBBY);
+						} else if (!connected.isFinished()) {
+							// seated by someone else (quick match), the next
+							// message belongs to the game loop
+							connected.setFinished();
 						}
 					}
-					while (model.isInGame() && !model.isPlaying()) {
+					while (model.isConnected() && model.isInGame() && !model.isPlaying()) {
 						CommunicationTask ingame = new CommunicationTask("Wildcard");
 						ingame.setWildcard(true);
 						model.getCommunicator().addReceivTask(ingame, false);
-						while (!ingame.isFinished() && !model.isPlaying()) {
+						// a lost connection may have cleared the tasks before
+						// this one was queued, nobody would finish it then
+						while (!ingame.isFinished() && !model.isPlaying() && model.isInGame() && model.isConnected()) {
 							try {
 								Thread.sleep(1000);
 							} catch (InterruptedException e) {
@@ -152,119 +97,60 @@ public class PlayerController {
 							}
 						}
 						if (ingame.isFinished()) {
-							String[] input = ingame.getMessage().split(":");
-							String msg = input[0] + ":" + input[1];
-							model.getLogger().log("Player " + model.getName(), "Checking in ingame", ingame, msg);
-							switch (msg) {
-							case "chat:send":
-								if (input.length > 2){
-									model.getLogger().log("Player " + model.getName(), "Received", ingame, "chat:send");
-									CommunicationTask received = new CommunicationTask("chat:send:success");
-									received.setEncrypt(true);
-									model.getCommunicator().addSendTask(received);
-									CommunicationTask send = new CommunicationTask("chat:"+getModel().getName()+":"+input[2]);
-									model.getGame().notifyOtherPlayer(send, controller);
-								} else {
-									model.getLogger().log("Player " + model.getName(), "Error: "+CommunicationErrors.emptyChatMessage, null, null);
-								}
-								break;
-							case "game:setstone":
-								model.getLogger().log("Player " + model.getName(), "Received", ingame, "game:setstone");
-								if (input.length == 3) {
-									if (model.getGame().setStone(Integer.parseInt(input[2]))) {
-										CommunicationTask success = new CommunicationTask("success:set");
-										success.setEncrypt(true);
-										model.getCommunicator().addSendTask(success);
-										model.getGame()
-												.notifyOtherPlayer(new CommunicationTask("game:setstone:" + input[2]));
-									} else {
-
-									}
-								}
-								break;
-
-							case "game:finished":
-								model.getLogger().log("Player " + model.getName(), "Received", ingame, "game:finished");
-								model.getGame().notifyError();
-								break;
-
-							default:
-								model.getLogger().log("Player " + model.getName(), "Received uncertain", ingame, null);
-								break;
-							}
+							MessageEnvelope input = ingame.getEnvelope();
+							model.getLogger().log("Player " + model.getName(), "Checking in ingame", ingame, null);
+							server.getDispatcher().dispatch(controller, input, PlayerState.WAITING);
 						} else {
 							ingame.setFinished();
 							break;
 						}
 					}
-					while (model.isPlaying()) {
+					while (model.isConnected() && model.isPlaying()) {
 						CommunicationTask playing = new CommunicationTask("Wildcard");
 						playing.setWildcard(true);
 						model.getCommunicator().addReceivTask(playing, false);
-						while (!playing.isFinished()) {
+						while (!playing.isFinished() && model.isConnected()) {
 							try {
 								Thread.sleep(1000);
 							} catch (InterruptedException e) {
 								e.printStackTrace();
 							}
 						}
-						String[] input = playing.getMessage().split(":");
-						String msg = input[0] + ":" + input[1];
-						model.getLogger().log("Player " + model.getName(), "Checking in playing", playing, msg);
-						switch (msg) {
-						case "chat:send":
-							if (input.length > 2){
-								model.getLogger().log("Player " + model.getName(), "Received", playing, "chat:send");
-								CommunicationTask received = new CommunicationTask("chat:send:success");
-								received.setEncrypt(true);
-								model.getCommunicator().addSendTask(received);
-								CommunicationTask send = new CommunicationTask("chat:"+getModel().getName()+":"+input[2]);
-								model.getGame().notifyOtherPlayer(send, controller);
-							} else {
-								model.getLogger().log("Player " + model.getName(), "Error: "+CommunicationErrors.emptyChatMessage, null, null);
-							}
-							break;
-						case "game:setstone":
-							model.getLogger().log("Player " + model.getName(), "Received", playing, "game:setstone");
-							if (model.getGame().setStone(Integer.parseInt(input[2]))) {
-								CommunicationTask success = new CommunicationTask("success:set");
-								success.setEncrypt(true);
-								model.getCommunicator().addSendTask(success);
-								model.getGame().notifyOtherPlayer(playing);
-								checkForWinner();
-							}
-							break;
-
-						case "game:finished":
-							model.getLogger().log("Player " + model.getName(), "Received", playing, "game:finished");
-							model.getGame().notifyError();
-							break;
-
-						default:
-							model.getLogger().log("Player " + model.getName(), "Received uncertain", playing, null);
+						if (!playing.isFinished()) {
+							playing.setFinished();
 							break;
 						}
+						MessageEnvelope input = playing.getEnvelope();
+						model.getLogger().log("Player " + model.getName(), "Checking in playing", playing, null);
+						server.getDispatcher().dispatch(controller, input, PlayerState.PLAYING);
 					}
 					if (!model.isConnected() && !model.isInGame() && !model.isPlaying()) {
 						model.setServerRunning(false);
-						server.newPlayer();
+						server.evictPlayer(controller);
+						if (!wasConnected) {
+							// accepting failed, someone else has to wait for the next client
+							server.newPlayer();
+						}
 						try {
 							model.getPlayerSocket().close();
 						} catch (IOException e) {
 							e.printStackTrace();
 						}
+					} else if (!model.isConnected()) {
+						// the game actor has not taken the player out of the game yet
+						try {
+							Thread.sleep(100);
+						} catch (InterruptedException e) {
+							e.printStackTrace();
+						}
 					}
 				}
 			}
 		}).start();
 	}
 
-	protected void checkForWinner() {
-		if (model.getGame().getGame().getBoard().hasWon(false) || model.getGame().getGame().getBoard().hasWon(true)) {
-			model.getGame().notifyWinnerAndLoser();
-		} else if (model.getGame().getGame().getBoard().isTie()) {
-			model.getGame().notifyAllTie();
-		}
+	public void checkForWinner() {
+		model.getGame().checkForWinner();
 	}
 
 	private boolean initalConnection() throws InterruptedException {
@@ -304,6 +190,7 @@ public class PlayerController {
 			CommunicationTask confirm = new CommunicationTask(
 					"success:accepted:" + model.getCommunicator().exportPublikKey());
 			confirm.setEncrypt(false);
+			confirm.setRequestId(connection.getEnvelope().getRequestId());
 			model.getCommunicator().addSendTask(confirm);
 			while (!confirm.isFinished()) {
 				Thread.sleep(500);
@@ -316,6 +203,7 @@ public class PlayerController {
 			model.getCommunicator().setCryptoKey(keyEx.getMessage().split(":")[2]);
 			CommunicationTask keyExSuccess = new CommunicationTask("connection:keyExchange:success");
 			keyExSuccess.setEncrypt(false);
+			keyExSuccess.setRequestId(keyEx.getEnvelope().getRequestId());
 			model.getCommunicator().addSendTask(keyExSuccess);
 			return true;
 		} catch (IOException e) {
@@ -330,21 +218,31 @@ public class PlayerController {
 		while (model.isServerRunning()) {
 			try {
 				if (model.getCommunicator().hasCurrentTask(true)) {
-					String inline = model.getInput().readLine();
+					String inline;
+					try {
+						inline = model.getInput().readLine();
+					} catch (IOException e) {
+						// socket closed, e.g. by the write watchdog
+						inline = null;
+					}
 					CommunicationTask activeTask = model.getCommunicator().getCurrentTask(true);
+					if (inline == null) {
+						connectionLost();
+						break;
+					}
+					MessageEnvelope envelope = model.getCommunicator().readEnvelope(inline);
 					if (activeTask.isWildcard()) {
-						if (inline != null) {
-							activeTask.setMessage(inline);
-							model.getLogger().log("Player " + model.getName(), "Expected Wildcard received", activeTask,
-									model.getCommunicator().decryptMessage(inline));
-							activeTask.setMessage(model.getCommunicator().decryptMessage(inline));
-							activeTask.setFinished();
-						}
+						model.getLogger().log("Player " + model.getName(), "Expected Wildcard received", activeTask,
+								envelope.getText());
+						activeTask.setMessage(envelope.getText());
+						activeTask.setEnvelope(envelope);
+						activeTask.setFinished();
 					} else {
 						model.getLogger().log("Player " + model.getName(), "Expected Message received", activeTask,
-							model.getCommunicator().decryptMessage(inline));
-						if (model.getCommunicator().doesTaskMatch(activeTask, inline)) {
+							envelope.getText());
+						if (model.getCommunicator().doesTaskMatch(activeTask, envelope)) {
 							activeTask.setMessage(inline);
+							activeTask.setEnvelope(envelope);
 							activeTask.setAttr(model.getCommunicator().getAttr(activeTask));
 							activeTask.setFinished();
 						} else {
@@ -360,16 +258,44 @@ public class PlayerController {
 		model.getInput().close();
 	}
 
+	/**
+	 * The client closed the socket without disconnecting. Ends a running game
+	 * and releases the waiting player thread, which then evicts the player.
+	 */
+	private void connectionLost() {
+		model.getLogger().log("Player " + model.getName(), "Connection lost", null, null);
+		GameController game = model.getGame();
+		if (game != null) {
+			game.tell(game::notifyError);
+		}
+		model.setConnected(false);
+		model.getCommunicator().clearTasks();
+	}
+
+	/**
+	 * Writes all messages which are ready with one flush, so a burst costs one
+	 * system call instead of one per message
+	 */
 	private void outputHandler() throws IOException, InterruptedException {
-		model.setOutput(new PrintStream(model.getPlayerSocket().getOutputStream()));
+		model.setOutput(new PrintStream(new BufferedOutputStream(
+				model.getCommunicator().countWrites(model.getPlayerSocket().getOutputStream()),
+				OutboundQueue.MAX_BATCH_BYTES), false));
 		model.getLogger().log("Player " + model.getName(), "OutputHandler started running", null, null);
+		ArrayList<CommunicationTask> batch = new ArrayList<>();
 		while (model.isServerRunning()) {
-			if (model.getCommunicator().hasCurrentTask(false)) {
-				CommunicationTask activeTask = model.getCommunicator().getCurrentTask(false);
-				model.getOutput().println(activeTask.getMessage());
-				model.getLogger().log("Player " + model.getName(), "Message sent", activeTask,
-						model.getCommunicator().getDecryptedMessage(activeTask));
-				activeTask.setFinished();
+			batch.clear();
+			if (model.getCommunicator().takeSendTasks(batch, 500) > 0) {
+				model.getCommunicator().writeStarted();
+				for (CommunicationTask activeTask : batch) {
+					model.getOutput().println(activeTask.getFrame());
+				}
+				model.getOutput().flush();
+				model.getCommunicator().writeFinished();
+				for (CommunicationTask activeTask : batch) {
+					model.getLogger().log("Player " + model.getName(), "Message sent", activeTask,
+							model.getCommunicator().getDecryptedMessage(activeTask));
+					activeTask.setFinished();
+				}
 			}
 		}
 		model.getLogger().log("Player " + model.getName(), "OutputHandler shuting down", null, null);
@@ -377,8 +303,11 @@ public class PlayerController {
 	}
 
 	public int joinGame(GameController gm) {
-		model.setGame(gm);
-		return gm.join(controller);
+		int seat = gm.join(controller);
+		if (seat != -1) {
+			model.setGame(gm);
+		}
+		return seat;
 	}
 
 	public void leaveGame() {
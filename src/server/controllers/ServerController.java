@@ -1,13 +1,99 @@
 package server.controllers;
 
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import server.com.CommandDispatcher;
+import server.com.Communicator;
 import server.com.CommunicationTask;
+import server.com.Opcode;
+import server.controllers.handlers.ChatChannelHandler;
+import server.controllers.handlers.ChatSendHandler;
+import server.controllers.handlers.DisconnectHandler;
+import server.controllers.handlers.FinishedHandler;
+import server.controllers.handlers.HintHandler;
+import server.controllers.handlers.JoinGameHandler;
+import server.controllers.handlers.NewGameHandler;
+import server.controllers.handlers.QuickMatchHandler;
+import server.controllers.handlers.RequestGamesHandler;
+import server.controllers.handlers.SetStoneHandler;
+import server.controllers.handlers.SubscribeHandler;
+import server.models.BoardModel;
+import server.models.BotSettings;
+import server.models.ChatHistory;
+import server.models.PlayerState;
 import server.models.ServerModel;
 
 public class ServerController {
 	private ServerModel model;
+	private CommandDispatcher dispatcher;
+	private LobbyController lobby;
+	private MatchmakingController matchmaking;
+	private FanOutController fanOut;
+	private ChatController chat;
+	private BotController bots;
+	private HintController hints;
 
 	public ServerController(boolean logging) {
-		model = new ServerModel(logging);
+		this(logging, ServerModel.DEFAULT_PORT);
+	}
+
+	public ServerController(boolean logging, int port) {
+		this(logging, port, ChatHistory.DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param logging
+	 * @param port
+	 * @param chatHistory
+	 *            chat messages kept per channel
+	 */
+	public ServerController(boolean logging, int port, int chatHistory) {
+		this(logging, port, chatHistory, new BotSettings());
+	}
+
+	/**
+	 * @param logging
+	 * @param port
+	 * @param chatHistory
+	 *            chat messages kept per channel
+	 * @param botSettings
+	 *            when bots join waiting games
+	 */
+	public ServerController(boolean logging, int port, int chatHistory, BotSettings botSettings) {
+		model = new ServerModel(logging, port);
+		lobby = new LobbyController(model);
+		matchmaking = new MatchmakingController(this);
+		fanOut = new FanOutController(model.getMetrics());
+		chat = new ChatController(fanOut, model.getLogger(), model.getMetrics(), chatHistory);
+		dispatcher = new CommandDispatcher(model.getLogger(), model.getMetrics());
+		bots = new BotController(this, botSettings);
+		hints = new HintController(model.getMetrics());
+		registerCommands();
+		startWriteWatchdog();
+	}
+
+	private void registerCommands() {
+		dispatcher.register(Opcode.CHAT_SEND, new ChatSendHandler(this), PlayerState.LOBBY, PlayerState.WAITING,
+				PlayerState.PLAYING);
+		dispatcher.register(Opcode.CHAT_JOIN, new ChatChannelHandler(this), PlayerState.LOBBY, PlayerState.WAITING,
+				PlayerState.PLAYING);
+		dispatcher.register(Opcode.CHAT_LEAVE, new ChatChannelHandler(this), PlayerState.LOBBY, PlayerState.WAITING,
+				PlayerState.PLAYING);
+		dispatcher.register(Opcode.INFO_REQUEST_GAMES, new RequestGamesHandler(this), PlayerState.LOBBY);
+		dispatcher.register(Opcode.INFO_SUBSCRIBE, new SubscribeHandler(this), PlayerState.LOBBY);
+		dispatcher.register(Opcode.INFO_UNSUBSCRIBE, new SubscribeHandler(this), PlayerState.LOBBY);
+		dispatcher.register(Opcode.GAME_JOIN, new JoinGameHandler(this), PlayerState.LOBBY);
+		dispatcher.register(Opcode.GAME_QUICKMATCH, new QuickMatchHandler(this), PlayerState.LOBBY);
+		dispatcher.register(Opcode.GAME_CANCELMATCH, new QuickMatchHandler(this), PlayerState.LOBBY);
+		dispatcher.register(Opcode.SERVER_NEWGAME, new NewGameHandler(this), PlayerState.LOBBY);
+		dispatcher.register(Opcode.CONNECTION_DISCONNECT, new DisconnectHandler(), PlayerState.LOBBY);
+		dispatcher.register(Opcode.GAME_SETSTONE, new SetStoneHandler(), PlayerState.WAITING, PlayerState.PLAYING);
+		dispatcher.register(Opcode.GAME_HINT, new HintHandler(hints), PlayerState.WAITING, PlayerState.PLAYING);
+		dispatcher.register(Opcode.GAME_FINISHED, new FinishedHandler(), PlayerState.LOBBY, PlayerState.WAITING,
+				PlayerState.PLAYING);
 	}
 
 	public void start(){
@@ -17,6 +103,80 @@ public class ServerController {
 		player.start();
 	}
 
+	/**
+	 * Prints all server metrics to the console every few seconds
+	 *
+	 * @param seconds
+	 */
+	public void startStatsReport(int seconds) {
+		Thread reporter = new Thread("Server:statsReport") {
+			@Override
+			public void run() {
+				while (true) {
+					try {
+						Thread.sleep(seconds * 1000L);
+					} catch (InterruptedException e) {
+						return;
+					}
+					System.out.println("<--| Stats |-->\n" + model.getMetrics().report());
+				}
+			}
+		};
+		reporter.setDaemon(true);
+		reporter.start();
+	}
+
+	/**
+	 * Closes connections whose output handler is stuck in a write for longer
+	 * than the write timeout, e.g. because the client stopped reading
+	 */
+	private void startWriteWatchdog() {
+		LongAdder timeouts = model.getMetrics().counter("outbound.writeTimeouts");
+		ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "Server:writeWatchdog");
+			t.setDaemon(true);
+			return t;
+		});
+		watchdog.scheduleWithFixedDelay(() -> {
+			long now = System.currentTimeMillis();
+			for (PlayerController player : model.getPlayers()) {
+				Communicator com = player.getCom();
+				if (com.getWriteBlockedMillis(now) > com.getLimits().getWriteTimeoutMillis()
+						&& com.closeConnection("write timeout")) {
+					timeouts.increment();
+				}
+			}
+		}, 1, 1, TimeUnit.SECONDS);
+	}
+
+	public LobbyController getLobby() {
+		return lobby;
+	}
+
+	public MatchmakingController getMatchmaking() {
+		return matchmaking;
+	}
+
+	public BotController getBots() {
+		return bots;
+	}
+
+	public HintController getHints() {
+		return hints;
+	}
+
+	public ChatController getChat() {
+		return chat;
+	}
+
+	public FanOutController getFanOut() {
+		return fanOut;
+	}
+
+	public CommandDispatcher getDispatcher() {
+		return dispatcher;
+	}
+
 	public ServerModel getModel() {
 		return model;
 	}
@@ -27,43 +187,127 @@ public class ServerController {
 
 	public void newPlayer() {
 		PlayerController player = new PlayerController(this, model.getLogger());
-		player.start();
 		model.getPlayers().add(player);
+		player.start();
 	}
 
 	public int joinGame(String string, PlayerController controller) {
-		for (GameController gm : model.getGames()) {
-			if(gm.getGame().getName().equals(string)){
-				if(gm.canJoin()){
-					return controller.joinGame(gm);
-				}
-			}
+		GameController gm = model.getGames().get(string);
+		return gm == null ? -1 : joinGame(gm, controller);
+	}
+
+	/**
+	 * @param gm
+	 * @param controller
+	 * @return the seat (1 or 2) or -1 if the game is full
+	 */
+	public int joinGame(GameController gm, PlayerController controller) {
+		if(!gm.canJoin()){
+			return -1;
+		}
+		int seat = controller.joinGame(gm);
+		if(seat == 2){
+			lobby.gameFilled(gm.getGame().getName());
 		}
-		return -1;
+		return seat;
+	}
+
+	/**
+	 * Seats the player on the second seat opposite the waiting player, never
+	 * on the first one
+	 *
+	 * @param gm
+	 * @param waiting
+	 *            the player on the first seat
+	 * @param controller
+	 * @return false if the game is full or the waiting player left
+	 */
+	public boolean joinGameAgainst(GameController gm, PlayerController waiting, PlayerController controller) {
+		if(!gm.canJoin() || !gm.joinAgainst(waiting, controller)){
+			return false;
+		}
+		controller.getModel().setGame(gm);
+		lobby.gameFilled(gm.getGame().getName());
+		return true;
 	}
 
 	public boolean createGame(String name) {
-		for (GameController gm : model.getGames()) {
-			if(gm.getGame().getName().equals(name)){
-				return false;
-			}
+		return createGame(name, new BoardModel());
+	}
+
+	/**
+	 * @param name
+	 * @param board
+	 *            the empty board the game is played on
+	 * @return false if the name is taken
+	 */
+	public boolean createGame(String name, BoardModel board) {
+		GameController gm = model.getGames().create(name, model.getLogger(), board);
+		if(gm == null){
+			return false;
+		}
+		gm.setListed(true);
+		lobby.gameCreated(name);
+		if(!gm.canJoin()){
+			// filled before it was listed
+			lobby.gameFilled(name);
 		}
-		model.getGames().add(new GameController(name, model.getLogger()));
 		return true;
 	}
 
+	/**
+	 * Removes the game from the registry. Only games which were listed in the
+	 * lobby are announced as removed.
+	 *
+	 * @param gameController
+	 */
 	public void removeGame(GameController gameController) {
-		if(model.getGames().contains(gameController)){
-			model.getGames().remove(gameController);
+		if(gameController != null && model.getGames().remove(gameController) && gameController.isListed()){
+			lobby.gameRemoved(gameController.getGame().getName());
 		}
 	}
 
+	/**
+	 * Sends the message to all players in the lobby except the sender. Only
+	 * walks the presence index, not all players. The message is encrypted and
+	 * queued by the fan-out workers, the caller returns at once.
+	 *
+	 * @param ct
+	 * @param player
+	 */
 	public void notifyAllPlayer(CommunicationTask ct, PlayerController player){
 		model.getLogger().log("Server", "notifying all Clients", ct, null);
-		for (PlayerController pl : model.getPlayers()){
-			if(pl.getModel().isConnected() && !pl.getModel().isInGame() && !pl.equals(player)){
-				pl.getCom().addSendTask(ct);
-			}
+		fanOut.send(ct.getMessage(), ct.isEncrypt(), model.getLobbyPlayers(), player);
+	}
+
+	/**
+	 * Keeps the presence index and the lobby chat channel in sync with the
+	 * state of the player. Called whenever connected, inGame or playing of the
+	 * player changes.
+	 *
+	 * @param player
+	 */
+	public void updatePresence(PlayerController player){
+		if(player.getModel().getState() == PlayerState.LOBBY && model.getPlayers().contains(player)){
+			model.getLobbyPlayers().add(player);
+			chat.join(ChatController.LOBBY, player);
+		} else {
+			model.getLobbyPlayers().remove(player);
+			chat.leave(ChatController.LOBBY, player);
 		}
 	}
+
+	/**
+	 * Forgets a disconnected player, so its socket, model and communicator can
+	 * be garbage collected
+	 *
+	 * @param player
+	 */
+	public void evictPlayer(PlayerController player){
+		model.getLogger().log("Server", "evicting player", null, player.getModel().getName());
+		model.getPlayers().remove(player);
+		model.getLobbyPlayers().remove(player);
+		lobby.unsubscribe(player);
+		chat.leaveAll(player);
+	}
 }
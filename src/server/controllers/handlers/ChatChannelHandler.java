@@ -0,0 +1,40 @@
+package server.controllers.handlers;
+
+import server.com.CommandHandler;
+import server.com.CommunicationErrors;
+import server.com.MessageEnvelope;
+import server.com.Opcode;
+import server.controllers.ChatController;
+import server.controllers.PlayerController;
+import server.controllers.ServerController;
+import server.models.PlayerState;
+
+/**
+ * chat:join:channel - joins a chat channel, answered with the recent messages
+ * as chat:history:channel[:sender:text]...<br>
+ * chat:leave:channel - leaves a chat channel
+ */
+public class ChatChannelHandler implements CommandHandler {
+	private ServerController server;
+
+	public ChatChannelHandler(ServerController server) {
+		this.server = server;
+	}
+
+	@Override
+	public void handle(PlayerController player, MessageEnvelope message, PlayerState state) {
+		if (message.getArgCount() != 1 || !ChatController.isValidName(message.getArg(0))) {
+			player.getCom().replyError(message, CommunicationErrors.invalidChannel);
+			return;
+		}
+		String channel = message.getArg(0);
+		if (message.getOpcode() == Opcode.CHAT_JOIN) {
+			server.getChat().join(channel, player);
+			player.getCom().reply(message, server.getChat().history(channel));
+		} else if (server.getChat().leave(channel, player)) {
+			player.getCom().reply(message, "chat:leave:success:" + channel);
+		} else {
+			player.getCom().replyError(message, CommunicationErrors.notInChannel);
+		}
+	}
+}
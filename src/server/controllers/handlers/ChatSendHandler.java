@@ -0,0 +1,67 @@
+package server.controllers.handlers;
+
+import server.com.CommandHandler;
+import server.com.CommunicationErrors;
+import server.com.CommunicationTask;
+import server.com.MessageEnvelope;
+import server.controllers.ChatController;
+import server.controllers.GameController;
+import server.controllers.PlayerController;
+import server.controllers.ServerController;
+import server.models.PlayerState;
+
+/**
+ * chat:send:message - sends a chat message to the lobby channel or to the
+ * opponent, an error while there is no opponent yet<br>
+ * chat:send:message:channel - sends a chat message to a joined channel
+ */
+public class ChatSendHandler implements CommandHandler {
+	private ServerController server;
+
+	public ChatSendHandler(ServerController server) {
+		this.server = server;
+	}
+
+	@Override
+	public void handle(PlayerController player, MessageEnvelope message, PlayerState state) {
+		if (message.getArgCount() == 0) {
+			player.getModel().getLogger().log("Player " + player.getModel().getName(),
+					"Error: " + CommunicationErrors.emptyChatMessage, null, null);
+			player.getCom().replyError(message, CommunicationErrors.emptyChatMessage);
+		} else if (message.getArgCount() > 1) {
+			String channel = message.getArg(1);
+			if (!server.getChat().isMember(channel, player)) {
+				player.getCom().replyError(message, CommunicationErrors.notInChannel);
+				return;
+			}
+			player.getCom().reply(message, "chat:send:success");
+			server.getChat().publish(channel, player, message.getArg(0));
+		} else if (state == PlayerState.LOBBY) {
+			if (!server.getChat().isMember(ChatController.LOBBY, player)) {
+				player.getCom().replyError(message, CommunicationErrors.notInChannel);
+				return;
+			}
+			player.getCom().reply(message, "chat:send:success");
+			server.getChat().publish(ChatController.LOBBY, player, message.getArg(0));
+		} else {
+			GameController game = player.getModel().getGame();
+			if (game == null) {
+				player.getCom().replyError(message, CommunicationErrors.unknownErr);
+				return;
+			}
+			CommunicationTask send = new CommunicationTask(
+					"chat:" + player.getModel().getName() + ":" + message.getArg(0));
+			// a chat must never become the first set of a game still waiting
+			// for its opponent. Seats are taken off the actor too, but only
+			// freed on it, so once both are taken they stay so for this action
+			game.tell(() -> {
+				if (game.getGame().getPlayerOne() == null || game.getGame().getPlayerTwo() == null) {
+					player.getCom().replyError(message, CommunicationErrors.noOpponent);
+					return;
+				}
+				player.getCom().reply(message, "chat:send:success");
+				game.notifyOtherPlayer(send, player);
+			});
+		}
+	}
+}
@@ -0,0 +1,18 @@
+package server.controllers.handlers;
+
+import server.com.CommandHandler;
+import server.com.MessageEnvelope;
+import server.controllers.PlayerController;
+import server.models.PlayerState;
+
+/**
+ * connection:disconnect - the player leaves the server
+ */
+public class DisconnectHandler implements CommandHandler {
+
+	@Override
+	public void handle(PlayerController player, MessageEnvelope message, PlayerState state) {
+		player.getCom().reply(message, "success:disconnected");
+		player.getModel().setConnected(false);
+	}
+}
@@ -0,0 +1,22 @@
+package server.controllers.handlers;
+
+import server.com.CommandHandler;
+import server.com.MessageEnvelope;
+import server.controllers.GameController;
+import server.controllers.PlayerController;
+import server.models.PlayerState;
+
+/**
+ * game:finished - the player gave up or closed the game window
+ */
+public class FinishedHandler implements CommandHandler {
+
+	@Override
+	public void handle(PlayerController player, MessageEnvelope message, PlayerState state) {
+		GameController game = player.getModel().getGame();
+		if (state != PlayerState.LOBBY && game != null) {
+			game.tell(game::notifyError);
+		}
+		player.getCom().reply(message, "success:finished");
+	}
+}
@@ -0,0 +1,74 @@
+package server.controllers.handlers;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import server.com.CommandHandler;
+import server.com.CommunicationErrors;
+import server.com.MessageEnvelope;
+import server.controllers.GameController;
+import server.controllers.HintController;
+import server.controllers.PlayerController;
+import server.engine.Analysis;
+import server.engine.SearchEngine;
+import server.models.BoardModel;
+import server.models.PlayerState;
+
+/**
+ * game:hint - answers success:hint:score0:score1:... with the score of every
+ * column for the asking player, x for a full column. A score followed by w is
+ * a forced win, followed by l a forced loss. Only on the turn of the player.
+ */
+public class HintHandler implements CommandHandler {
+	private HintController hints;
+
+	public HintHandler(HintController hints) {
+		this.hints = hints;
+	}
+
+	@Override
+	public void handle(PlayerController player, MessageEnvelope message, PlayerState state) {
+		GameController game = player.getModel().getGame();
+		if (game == null) {
+			player.getCom().replyError(message, CommunicationErrors.unknownErr);
+			return;
+		}
+		// the board only changes on the actor, the analysis runs on a copy
+		CompletableFuture<BoardModel> position = new CompletableFuture<>();
+		game.tell(() -> {
+			BoardModel board = game.getGame().getBoard();
+			boolean turn = !game.getGame().isFinished()
+					&& player == (board.isPlayer1ToMove() ? game.getGame().getPlayerOne() : game.getGame().getPlayerTwo());
+			position.complete(turn ? board.copy() : null);
+		});
+		BoardModel board;
+		try {
+			board = position.get(1, TimeUnit.SECONDS);
+		} catch (InterruptedException | ExecutionException | TimeoutException e) {
+			player.getCom().replyError(message, CommunicationErrors.unknownErr);
+			return;
+		}
+		if (board == null) {
+			player.getCom().replyError(message, CommunicationErrors.notYourTurn);
+			return;
+		}
+		Analysis analysis = hints.hint(board);
+		StringBuilder reply = new StringBuilder("success:hint");
+		for (int score : analysis.getScores()) {
+			reply.append(':');
+			if (score == Analysis.FULL) {
+				reply.append('x');
+			} else {
+				reply.append(score);
+				if (SearchEngine.isWin(score)) {
+					reply.append('w');
+				} else if (SearchEngine.isLoss(score)) {
+					reply.append('l');
+				}
+			}
+		}
+		player.getCom().reply(message, reply.toString());
+	}
+}
@@ -0,0 +1,55 @@
+package server.controllers.handlers;
+
+import server.com.CommandHandler;
+import server.com.CommunicationErrors;
+import server.com.MessageEnvelope;
+import server.controllers.GameController;
+import server.controllers.PlayerController;
+import server.controllers.ServerController;
+import server.models.PlayerModel;
+import server.models.PlayerState;
+
+/**
+ * game:join:name - joins an existing game, answers
+ * success:joined:seat:game:columns:rows:winLength
+ */
+public class JoinGameHandler implements CommandHandler {
+	private ServerController server;
+
+	public JoinGameHandler(ServerController server) {
+		this.server = server;
+	}
+
+	@Override
+	public void handle(PlayerController player, MessageEnvelope message, PlayerState state) {
+		PlayerModel model = player.getModel();
+		if (server.getMatchmaking().isQueued(player) && !server.getMatchmaking().cancel(player)) {
+			// the matchmaking is seating the player right now
+			model.getLogger().log("Player " + model.getName(), "Join failed, being matched", null, message.getText());
+			model.getCommunicator().replyError(message, CommunicationErrors.gameFull);
+		} else if (message.getArgCount() == 1) {
+			// looked up before joining, the game may already be over when the reply is built
+			GameController game = server.getModel().getGames().get(message.getArg(0));
+			int joined = game == null ? -1 : server.joinGame(game, player);
+			if (joined != -1) {
+				model.getLogger().log("Player " + model.getName(), "Joined game", null, message.getArg(0));
+				if (joined == 2) {
+					model.setPlaying(true);
+				}
+				model.setInGame(true);
+				model.getCommunicator().reply(message, game.joinedMessage(joined));
+				if (joined == 2) {
+					game.tell(game::sendFirstSet);
+				} else {
+					server.getBots().scheduleJoin(game, player);
+				}
+			} else {
+				model.getLogger().log("Player " + model.getName(), "Join failed", null, message.getText());
+				model.getCommunicator().replyError(message, CommunicationErrors.unknownErr);
+			}
+		} else {
+			model.getLogger().log("Player " + model.getName(), "No game found", null, message.getText());
+			model.getCommunicator().replyError(message, CommunicationErrors.gameFull);
+		}
+	}
+}
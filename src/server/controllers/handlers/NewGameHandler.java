@@ -0,0 +1,54 @@
+package server.controllers.handlers;
+
+import server.com.CommandHandler;
+import server.com.CommunicationErrors;
+import server.com.MessageEnvelope;
+import server.controllers.PlayerController;
+import server.controllers.ServerController;
+import server.models.BoardModel;
+import server.models.PlayerState;
+
+/**
+ * server:newgame:name[:columns:rows:winLength] - creates a new game, by
+ * default on the classic 7x6 board with four in a line
+ */
+public class NewGameHandler implements CommandHandler {
+	private ServerController server;
+
+	public NewGameHandler(ServerController server) {
+		this.server = server;
+	}
+
+	@Override
+	public void handle(PlayerController player, MessageEnvelope message, PlayerState state) {
+		BoardModel board;
+		if (message.getArgCount() == 1) {
+			board = new BoardModel();
+		} else if (message.getArgCount() == 4) {
+			board = parseBoard(message);
+			if (board == null) {
+				player.getCom().replyError(message, CommunicationErrors.invalidBoard);
+				return;
+			}
+		} else {
+			player.getCom().replyError(message, CommunicationErrors.unknownErr);
+			return;
+		}
+		if (server.createGame(message.getArg(0), board)) {
+			player.getCom().reply(message, "success:created");
+		} else {
+			player.getCom().replyError(message, CommunicationErrors.gameExists);
+		}
+	}
+
+	private static BoardModel parseBoard(MessageEnvelope message) {
+		try {
+			int columns = Integer.parseInt(message.getArg(1));
+			int rows = Integer.parseInt(message.getArg(2));
+			int winLength = Integer.parseInt(message.getArg(3));
+			return BoardModel.isValid(columns, rows, winLength) ? new BoardModel(columns, rows, winLength) : null;
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+}
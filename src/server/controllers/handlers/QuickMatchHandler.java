@@ -0,0 +1,50 @@
+package server.controllers.handlers;
+
+import server.com.CommandHandler;
+import server.com.CommunicationErrors;
+import server.com.MessageEnvelope;
+import server.com.Opcode;
+import server.controllers.MatchmakingController;
+import server.controllers.PlayerController;
+import server.controllers.ServerController;
+import server.models.PlayerState;
+
+/**
+ * game:quickmatch[:rating] - waits for any opponent, answered with
+ * success:joined:seat:game:columns:rows:winLength once paired<br>
+ * game:cancelmatch - leaves the queue
+ */
+public class QuickMatchHandler implements CommandHandler {
+	private ServerController server;
+
+	public QuickMatchHandler(ServerController server) {
+		this.server = server;
+	}
+
+	@Override
+	public void handle(PlayerController player, MessageEnvelope message, PlayerState state) {
+		MatchmakingController matchmaking = server.getMatchmaking();
+		if (message.getOpcode() == Opcode.GAME_CANCELMATCH) {
+			if (matchmaking.cancel(player)) {
+				player.getCom().reply(message, "success:cancelled");
+			} else {
+				player.getCom().replyError(message, CommunicationErrors.unknownErr);
+			}
+			return;
+		}
+		int rating = MatchmakingController.NO_RATING;
+		if (message.getArgCount() == 1) {
+			try {
+				rating = Math.max(0, Integer.parseInt(message.getArg(0)));
+			} catch (NumberFormatException e) {
+				player.getCom().replyError(message, CommunicationErrors.unknownErr);
+				return;
+			}
+		}
+		player.getModel().getLogger().log("Player " + player.getModel().getName(), "Quick match", null,
+				message.getText());
+		if (!matchmaking.enqueue(player, message, rating)) {
+			player.getCom().replyError(message, CommunicationErrors.alreadyQueued);
+		}
+	}
+}
@@ -0,0 +1,62 @@
+package server.controllers.handlers;
+
+import server.com.CommandHandler;
+import server.com.CommunicationErrors;
+import server.com.MessageEnvelope;
+import server.controllers.PlayerController;
+import server.controllers.ServerController;
+import server.models.LobbySnapshot;
+import server.models.PlayerState;
+
+/**
+ * info:requestGames[:since=version][:offset=n][:limit=n][:prefix=text] -
+ * answers with the joinable games.
+ *
+ * Answers success:notmodified:version if the client already knows the current
+ * version, otherwise success:requested:names:version:total where total is the
+ * number of games matching the prefix. Without paging arguments the full list
+ * is answered from the snapshot's cached encoding. A malformed number is
+ * answered with an error.
+ */
+public class RequestGamesHandler implements CommandHandler {
+	public static final int MAX_LIMIT = 500;
+
+	private ServerController server;
+
+	public RequestGamesHandler(ServerController server) {
+		this.server = server;
+	}
+
+	@Override
+	public void handle(PlayerController player, MessageEnvelope message, PlayerState state) {
+		LobbySnapshot snapshot = server.getModel().getLobbySnapshot();
+		long since = -1;
+		int offset = 0;
+		int limit = Integer.MAX_VALUE;
+		String prefix = null;
+		try {
+			for (int i = 0; i < message.getArgCount(); i++) {
+				String arg = message.getArg(i);
+				if (arg.startsWith("since=")) {
+					since = Long.parseLong(arg.substring(6));
+				} else if (arg.startsWith("offset=")) {
+					offset = Math.max(0, Integer.parseInt(arg.substring(7)));
+				} else if (arg.startsWith("limit=")) {
+					limit = Math.max(0, Math.min(MAX_LIMIT, Integer.parseInt(arg.substring(6))));
+				} else if (arg.startsWith("prefix=")) {
+					prefix = arg.substring(7);
+				}
+			}
+		} catch (NumberFormatException e) {
+			// no partly applied paging, the client has to fix the request
+			player.getCom().replyError(message, CommunicationErrors.unknownErr);
+			return;
+		}
+		if (since == snapshot.getVersion()) {
+			player.getCom().reply(message, "success:notmodified:" + snapshot.getVersion());
+			return;
+		}
+		player.getCom().reply(message, "success:requested:" + snapshot.encode(prefix, offset, limit) + ":"
+				+ snapshot.getVersion() + ":" + snapshot.count(prefix));
+	}
+}
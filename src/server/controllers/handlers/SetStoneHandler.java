@@ -0,0 +1,47 @@
+package server.controllers.handlers;
+
+import server.com.CommandHandler;
+import server.com.CommunicationErrors;
+import server.com.CommunicationTask;
+import server.com.MessageEnvelope;
+import server.controllers.GameController;
+import server.controllers.PlayerController;
+import server.models.PlayerState;
+
+/**
+ * game:setstone:column - sets a stone on the game actor. Before the opponent
+ * joined, the move is kept as the first set of the game.
+ */
+public class SetStoneHandler implements CommandHandler {
+
+	@Override
+	public void handle(PlayerController player, MessageEnvelope message, PlayerState state) {
+		if (message.getArgCount() != 1) {
+			player.getCom().replyError(message, CommunicationErrors.unknownErr);
+			return;
+		}
+		int column;
+		try {
+			column = Integer.parseInt(message.getArg(0));
+		} catch (NumberFormatException e) {
+			player.getCom().replyError(message, CommunicationErrors.unknownErr);
+			return;
+		}
+		GameController game = player.getModel().getGame();
+		if (game == null) {
+			player.getCom().replyError(message, CommunicationErrors.unknownErr);
+			return;
+		}
+		game.tell(() -> {
+			if (game.setStone(player, column)) {
+				player.getCom().reply(message, "success:set");
+				game.notifyOtherPlayer(new CommunicationTask("game:setstone:" + column));
+				if (game.getGame().isFull()) {
+					game.checkForWinner();
+				}
+			} else {
+				player.getCom().replyError(message, CommunicationErrors.invalidMove);
+			}
+		});
+	}
+}
@@ -0,0 +1,30 @@
+package server.controllers.handlers;
+
+import server.com.CommandHandler;
+import server.com.MessageEnvelope;
+import server.com.Opcode;
+import server.controllers.PlayerController;
+import server.controllers.ServerController;
+import server.models.PlayerState;
+
+/**
+ * info:subscribe / info:unsubscribe - starts or stops the lobby change feed
+ */
+public class SubscribeHandler implements CommandHandler {
+	private ServerController server;
+
+	public SubscribeHandler(ServerController server) {
+		this.server = server;
+	}
+
+	@Override
+	public void handle(PlayerController player, MessageEnvelope message, PlayerState state) {
+		if (message.getOpcode() == Opcode.INFO_SUBSCRIBE) {
+			server.getLobby().subscribe(player);
+			player.getCom().reply(message, "success:subscribed");
+		} else {
+			server.getLobby().unsubscribe(player);
+			player.getCom().reply(message, "success:unsubscribed");
+		}
+	}
+}
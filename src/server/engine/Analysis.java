@@ -0,0 +1,85 @@
+package server.engine;
+
+/**
+ * The score of every column of one position, see
+ * {@link SearchEngine#analyze}
+ */
+public class Analysis {
+	/**
+	 * The score of a column which is full
+	 */
+	public static final int FULL = Integer.MIN_VALUE;
+
+	private final int[] scores;
+	private final int depth;
+	private final long nodes;
+	private final long nanos;
+
+	public Analysis(int[] scores, int depth, long nodes, long nanos) {
+		this.scores = scores;
+		this.depth = depth;
+		this.nodes = nodes;
+		this.nanos = nanos;
+	}
+
+	/**
+	 * @return per column the score for the player to move after playing it,
+	 *         see {@link SearchEngine#isWin(int)}, or {@link #FULL}
+	 */
+	public int[] getScores() {
+		return scores.clone();
+	}
+
+	public int getScore(int column) {
+		return scores[column];
+	}
+
+	/**
+	 * @return the column with the highest score, the center one of equal
+	 *         columns, or -1 if the board is full
+	 */
+	public int getBestColumn() {
+		int best = -1;
+		for (int column : SearchEngine.centerFirst(scores.length)) {
+			if (scores[column] != FULL && (best < 0 || scores[column] > scores[best])) {
+				best = column;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * @return the depth of the last completed iteration
+	 */
+	public int getDepth() {
+		return depth;
+	}
+
+	public long getNodes() {
+		return nodes;
+	}
+
+	public long getNanos() {
+		return nanos;
+	}
+
+	/**
+	 * @return the same scores seen from the other side of the board
+	 */
+	public Analysis mirror() {
+		int[] mirrored = new int[scores.length];
+		for (int column = 0; column < scores.length; column++) {
+			mirrored[scores.length - 1 - column] = scores[column];
+		}
+		return new Analysis(mirrored, depth, nodes, nanos);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder text = new StringBuilder("scores=");
+		for (int column = 0; column < scores.length; column++) {
+			text.append(column == 0 ? "" : ",").append(scores[column] == FULL ? "x" : String.valueOf(scores[column]));
+		}
+		return text.append(" depth=").append(depth).append(" nodes=").append(nodes).toString();
+	}
+}
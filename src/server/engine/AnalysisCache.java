@@ -0,0 +1,62 @@
+package server.engine;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import server.models.BoardModel;
+
+/**
+ * The analyses of recently asked positions, shared by all games. Keyed by the
+ * canonical hash of the position (see {@link BoardModel#getCanonicalHash()}),
+ * so a position and its mirror image share one entry. Once full, the least
+ * recently asked position is forgotten.
+ */
+public class AnalysisCache {
+	public static final int DEFAULT_CAPACITY = 32768;
+
+	private final LinkedHashMap<Long, Analysis> entries;
+
+	public AnalysisCache(int capacity) {
+		int size = Math.max(1, capacity);
+		this.entries = new LinkedHashMap<Long, Analysis>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, Analysis> eldest) {
+				return size() > size;
+			}
+		};
+	}
+
+	/**
+	 * @param board
+	 * @return the analysis in the orientation of the board or null
+	 */
+	public Analysis get(BoardModel board) {
+		Analysis found;
+		synchronized (entries) {
+			found = entries.get(board.getCanonicalHash());
+		}
+		return found == null || board.isCanonical() ? found : found.mirror();
+	}
+
+	/**
+	 * Keeps the deeper analysis if the position is already known
+	 *
+	 * @param board
+	 * @param analysis
+	 *            in the orientation of the board
+	 */
+	public void put(BoardModel board, Analysis analysis) {
+		Analysis canonical = board.isCanonical() ? analysis : analysis.mirror();
+		synchronized (entries) {
+			entries.merge(board.getCanonicalHash(), canonical, (old, now) -> old.getDepth() >= now.getDepth() ? old : now);
+		}
+	}
+
+	public int size() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+}
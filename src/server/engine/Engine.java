@@ -0,0 +1,20 @@
+package server.engine;
+
+import server.models.BoardModel;
+
+/**
+ * Chooses the move for the player to move within a time budget, see
+ * {@link SearchEngine} and {@link MctsEngine}
+ */
+public interface Engine {
+	/**
+	 * Safe to call from several threads at once
+	 *
+	 * @param board
+	 *            is not changed
+	 * @param budgetMillis
+	 *            the search answers after about this time
+	 * @return the chosen move, never null
+	 */
+	public SearchResult search(BoardModel board, long budgetMillis);
+}
@@ -0,0 +1,115 @@
+package server.engine;
+
+import server.metrics.MetricsRegistry;
+import server.models.BoardModel;
+
+/**
+ * Searches a fixed set of positions and prints nodes per second, the hit rate
+ * of the transposition table and the metrics of the engine.
+ *
+ * Usage: EngineBenchmark [-b budgetMillis] [-m tableMegabytes] [-t threads]
+ * [-s depth]. With -s the positions are searched to the depth with 1, 2, 4,
+ * ... threads up to -t and the speedup over one thread is printed.
+ */
+public class EngineBenchmark {
+	/**
+	 * Board size, then the moves from the empty board as columns starting at 0
+	 */
+	private static final String[][] POSITIONS = {
+			{ "7x6x4", "" },
+			{ "7x6x4", "3" },
+			{ "7x6x4", "343" },
+			{ "7x6x4", "2332" },
+			{ "7x6x4", "33443" },
+			{ "7x6x4", "3325544" },
+			{ "7x6x4", "332554461" },
+			{ "7x6x4", "333444221" },
+			{ "9x7x5", "4435" },
+			{ "10x10x5", "45546" } };
+
+	public static void main(String[] args) {
+		long budget = SearchEngine.DEFAULT_BUDGET_MILLIS;
+		int megabytes = SearchEngine.DEFAULT_TABLE_MEGABYTES;
+		int threads = SearchEngine.DEFAULT_THREADS;
+		int depth = 0;
+		for (int i = 0; i + 1 < args.length; i++) {
+			if (args[i].equals("-b")) {
+				budget = Long.parseLong(args[++i]);
+			} else if (args[i].equals("-m")) {
+				megabytes = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-t")) {
+				threads = Math.max(1, Integer.parseInt(args[++i]));
+			} else if (args[i].equals("-s")) {
+				depth = Integer.parseInt(args[++i]);
+			}
+		}
+		if (depth > 0) {
+			speedup(megabytes, threads, depth);
+			return;
+		}
+		MetricsRegistry metrics = new MetricsRegistry();
+		SearchEngine engine = new SearchEngine(metrics, megabytes, threads);
+		System.out.println("budget " + budget + " ms, table " + megabytes + " MB, " + threads + " threads");
+		for (String[] position : POSITIONS) {
+			BoardModel board = parse(position[0], position[1]);
+			engine.clear();
+			SearchResult result = engine.search(board, budget);
+			System.out.println(position[0] + " [" + position[1] + "] " + result);
+		}
+		System.out.print(metrics.report());
+	}
+
+	/**
+	 * Searches all positions to the same depth with 1, 2, 4, ... threads and
+	 * prints the time to depth relative to one thread
+	 */
+	private static void speedup(int megabytes, int maxThreads, int depth) {
+		System.out.println("time to depth " + depth + ", table " + megabytes + " MB");
+		// warm up the JIT, the first run is always the slowest
+		SearchEngine warmUp = new SearchEngine(new MetricsRegistry(), megabytes, 1);
+		for (String[] position : POSITIONS) {
+			warmUp.search(parse(position[0], position[1]), Long.MAX_VALUE / 2000000, depth);
+		}
+		long single = 0;
+		for (int threads = 1; threads <= maxThreads; threads = threads < maxThreads && threads * 2 > maxThreads ? maxThreads
+				: threads * 2) {
+			SearchEngine engine = new SearchEngine(new MetricsRegistry(), megabytes, threads);
+			long nanos = 0;
+			long nodes = 0;
+			for (String[] position : POSITIONS) {
+				BoardModel board = parse(position[0], position[1]);
+				engine.clear();
+				SearchResult result = engine.search(board, Long.MAX_VALUE / 2000000, depth);
+				nanos += result.getNanos();
+				nodes += result.getNodes();
+			}
+			if (threads == 1) {
+				single = nanos;
+			}
+			System.out.printf("threads=%d time=%dms speedup=%.2f nodes=%d nps=%d%n", threads, nanos / 1000000,
+					(double) single / nanos, nodes, nodes * 1000000000L / Math.max(1, nanos));
+			if (threads == maxThreads) {
+				break;
+			}
+		}
+	}
+
+	/**
+	 * @param size
+	 *            columns x rows x win length, e.g. 7x6x4
+	 * @param moves
+	 *            one digit per move
+	 * @return
+	 */
+	static BoardModel parse(String size, String moves) {
+		String[] parts = size.split("x");
+		BoardModel board = new BoardModel(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]),
+				Integer.parseInt(parts[2]));
+		for (int i = 0; i < moves.length(); i++) {
+			if (!board.play(Character.digit(moves.charAt(i), 36))) {
+				throw new IllegalArgumentException("illegal move " + i + " in " + moves);
+			}
+		}
+		return board;
+	}
+}
@@ -0,0 +1,111 @@
+package server.engine;
+
+import server.metrics.MetricsRegistry;
+import server.models.BoardModel;
+
+/**
+ * Prints the playouts per second of the {@link MctsEngine} with 1, 2, 4, ...
+ * threads up to -t, and with -g plays games against the alpha-beta
+ * {@link SearchEngine} with the same time per move.
+ *
+ * Usage: MctsBenchmark [-b budgetMillis] [-t threads] [-g games] [-a
+ * alphaBetaBudgetMillis]
+ */
+public class MctsBenchmark {
+	private static final String[][] POSITIONS = {
+			{ "7x6x4", "" },
+			{ "7x6x4", "3325544" },
+			{ "9x7x5", "4435" },
+			{ "10x10x5", "45546" } };
+
+	public static void main(String[] args) {
+		long budget = SearchEngine.DEFAULT_BUDGET_MILLIS;
+		long alphaBetaBudget = -1;
+		int threads = MctsEngine.DEFAULT_THREADS;
+		int games = 0;
+		for (int i = 0; i + 1 < args.length; i++) {
+			if (args[i].equals("-b")) {
+				budget = Long.parseLong(args[++i]);
+			} else if (args[i].equals("-a")) {
+				alphaBetaBudget = Long.parseLong(args[++i]);
+			} else if (args[i].equals("-t")) {
+				threads = Math.max(1, Integer.parseInt(args[++i]));
+			} else if (args[i].equals("-g")) {
+				games = Integer.parseInt(args[++i]);
+			}
+		}
+		playoutRate(budget, threads);
+		if (games > 0) {
+			headToHead(budget, alphaBetaBudget < 0 ? budget : alphaBetaBudget, threads, games);
+		}
+	}
+
+	private static void playoutRate(long budget, int maxThreads) {
+		System.out.println("playouts per second, " + budget + " ms per position");
+		for (int threads = 1; threads <= maxThreads; threads = threads < maxThreads && threads * 2 > maxThreads ? maxThreads
+				: threads * 2) {
+			MctsEngine engine = new MctsEngine(new MetricsRegistry(), "mcts", threads, MctsEngine.DEFAULT_EXPLORATION);
+			long nanos = 0;
+			long playouts = 0;
+			for (String[] position : POSITIONS) {
+				SearchResult result = engine.search(EngineBenchmark.parse(position[0], position[1]), budget);
+				nanos += result.getNanos();
+				playouts += result.getNodes();
+			}
+			long rate = playouts * 1000000000L / Math.max(1, nanos);
+			System.out.printf("threads=%d playouts/s=%d per thread=%d%n", threads, rate, rate / threads);
+			if (threads == maxThreads) {
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Every opening of two stones is played twice, with each engine starting
+	 * once
+	 */
+	private static void headToHead(long mctsBudget, long alphaBetaBudget, int threads, int games) {
+		MetricsRegistry metrics = new MetricsRegistry();
+		MctsEngine mcts = new MctsEngine(metrics, "mcts", threads, MctsEngine.DEFAULT_EXPLORATION);
+		SearchEngine alphaBeta = new SearchEngine(metrics, SearchEngine.DEFAULT_TABLE_MEGABYTES, threads);
+		System.out.println("mcts " + mctsBudget + " ms against alpha-beta " + alphaBetaBudget + " ms per move, "
+				+ threads + " threads");
+		int wins = 0;
+		int ties = 0;
+		int losses = 0;
+		for (int game = 0; game < games; game++) {
+			int opening = game / 2;
+			BoardModel board = EngineBenchmark.parse("7x6x4", "" + (opening % 7) + (opening / 7 % 7));
+			boolean mctsFirst = game % 2 == 0;
+			int result = play(board, mctsFirst ? mcts : alphaBeta, mctsFirst ? mctsBudget : alphaBetaBudget,
+					mctsFirst ? alphaBeta : mcts, mctsFirst ? alphaBetaBudget : mctsBudget);
+			if (result == 0) {
+				ties++;
+			} else if ((result == 1) == mctsFirst) {
+				wins++;
+			} else {
+				losses++;
+			}
+			System.out.println("game " + (game + 1) + ": mcts won " + wins + ", tied " + ties + ", lost " + losses);
+		}
+		System.out.print(metrics.report());
+	}
+
+	/**
+	 * @return 1 if the first engine won, -1 if the second won, 0 for a tie
+	 */
+	static int play(BoardModel board, Engine first, long firstBudget, Engine second, long secondBudget) {
+		boolean firstToMove = true;
+		while (true) {
+			int column = (firstToMove ? first.search(board, firstBudget) : second.search(board, secondBudget))
+					.getColumn();
+			board.play(column);
+			if (board.lastStoneWins()) {
+				return firstToMove ? 1 : -1;
+			} else if (board.isTie()) {
+				return 0;
+			}
+			firstToMove = !firstToMove;
+		}
+	}
+}
@@ -0,0 +1,314 @@
+package server.engine;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import server.metrics.Histogram;
+import server.metrics.MetricsRegistry;
+import server.models.BoardModel;
+
+/**
+ * Finds a move with Monte Carlo tree search: grows a tree of the positions
+ * after the current one, walks it along the most promising moves (UCT),
+ * finishes the game with random moves from where the tree ends and counts
+ * the result for every move on the way. Answers with the move tried most
+ * often.
+ *
+ * Needs no knowledge about the game but the rules, and its strength grows
+ * with the number of playouts, so a bot gets weaker with a smaller budget.
+ *
+ * All threads of a search walk the same tree (tree parallelism). A thread
+ * counts the visit of a node before its playout is done, which makes the
+ * node look worse to the other threads until the result comes in (virtual
+ * loss), so they spread over different moves. The tree is only locked while
+ * a node gets its children.
+ *
+ * Scores are from the view of the player to move: the win rate of the move
+ * from -1000 (always lost) to 1000 (always won), ties count half.
+ */
+public class MctsEngine implements Engine {
+	public static final double DEFAULT_EXPLORATION = 1.4;
+	public static final int DEFAULT_THREADS = SearchEngine.DEFAULT_THREADS;
+
+	/**
+	 * Playouts between two looks at the clock
+	 */
+	private static final int CLOCK_INTERVAL = 16;
+
+	private final int threads;
+	private final double exploration;
+	private final ForkJoinPool helpers;
+	private final AtomicLong seeds = new AtomicLong(System.nanoTime());
+
+	private final LongAdder searches;
+	private final LongAdder playouts;
+	private final LongAdder searchNanos;
+	private final Histogram searchTime;
+
+	public MctsEngine(MetricsRegistry metrics) {
+		this(metrics, "mcts", DEFAULT_THREADS, DEFAULT_EXPLORATION);
+	}
+
+	/**
+	 * @param metrics
+	 * @param prefix
+	 *            of the metric names
+	 * @param threads
+	 *            the threads of one search including the calling thread, the
+	 *            helper threads of all searches together never exceed threads
+	 *            - 1
+	 * @param exploration
+	 *            how much the walk prefers moves tried less often
+	 */
+	public MctsEngine(MetricsRegistry metrics, String prefix, int threads, double exploration) {
+		this.threads = Math.max(1, threads);
+		this.exploration = exploration;
+		this.helpers = this.threads == 1 ? null : new ForkJoinPool(this.threads - 1, pool -> {
+			ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+			t.setName("Server:mcts" + t.getPoolIndex());
+			t.setDaemon(true);
+			return t;
+		}, null, true);
+		this.searches = metrics.counter(prefix + ".searches");
+		this.playouts = metrics.counter(prefix + ".playouts");
+		this.searchNanos = metrics.counter(prefix + ".searchNanos");
+		this.searchTime = metrics.histogram(prefix + ".search");
+		metrics.gauge(prefix + ".playoutsPerSecond", () -> {
+			long nanos = searchNanos.sum();
+			return nanos == 0 ? 0 : playouts.sum() * 1000000000L / nanos;
+		});
+		metrics.gauge(prefix + ".threads", () -> this.threads);
+	}
+
+	@Override
+	public SearchResult search(BoardModel board, long budgetMillis) {
+		return search(board, budgetMillis, Long.MAX_VALUE);
+	}
+
+	/**
+	 * @param board
+	 *            is not changed
+	 * @param budgetMillis
+	 * @param maxPlayouts
+	 *            stop after this many playouts even if there is time left
+	 * @return the most tried move, never null
+	 */
+	public SearchResult search(BoardModel board, long budgetMillis, long maxPlayouts) {
+		long start = System.nanoTime();
+		if (board.isTie() || board.lastStoneWins()) {
+			return new SearchResult(-1, 0, 0, 0, 0, 0, 0);
+		}
+		Tree tree = new Tree(board, start + TimeUnit.MILLISECONDS.toNanos(budgetMillis), maxPlayouts);
+		CountDownLatch finished = new CountDownLatch(threads - 1);
+		for (int i = 1; i < threads; i++) {
+			long seed = seeds.getAndIncrement();
+			helpers.execute(() -> {
+				try {
+					tree.run(seed);
+				} finally {
+					finished.countDown();
+				}
+			});
+		}
+		tree.run(seeds.getAndIncrement());
+		tree.stop = true;
+		try {
+			// the helpers finish their current playout
+			finished.await(100, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		Node best = null;
+		for (Node child : tree.root.children) {
+			if (best == null || child.visits.get() > best.visits.get()) {
+				best = child;
+			}
+		}
+		long elapsed = System.nanoTime() - start;
+		long done = tree.playouts.get();
+		searches.increment();
+		playouts.add(done);
+		searchNanos.add(elapsed);
+		searchTime.record(elapsed);
+		int visits = Math.max(1, best.visits.get());
+		int score = (int) (1000L * (best.reward.get() - visits) / visits);
+		return new SearchResult(best.column, score, tree.depth.get(), done, elapsed, 0, 0);
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * One move in the tree and the results of the playouts through it
+	 */
+	private static final class Node {
+		private final int column;
+		/**
+		 * Who played the column, the results are counted for this player
+		 */
+		private final boolean player1;
+		private final AtomicInteger visits = new AtomicInteger();
+		/**
+		 * Two for a win, one for a tie
+		 */
+		private final AtomicLong reward = new AtomicLong();
+		private volatile Node[] children;
+
+		private Node(int column, boolean player1) {
+			this.column = column;
+			this.player1 = player1;
+		}
+	}
+
+	/**
+	 * What the threads of one search share
+	 */
+	private final class Tree {
+		private final BoardModel board;
+		private final Node root;
+		private final long deadline;
+		private final long maxPlayouts;
+		private final int[] order;
+		private final AtomicLong playouts = new AtomicLong();
+		private final AtomicInteger depth = new AtomicInteger();
+		private volatile boolean stop = false;
+
+		private Tree(BoardModel board, long deadline, long maxPlayouts) {
+			this.board = board.copy();
+			this.root = new Node(-1, !board.isPlayer1ToMove());
+			this.deadline = deadline;
+			this.maxPlayouts = maxPlayouts;
+			this.order = SearchEngine.centerFirst(board.getColumns());
+			expand(root, this.board);
+		}
+
+		private void run(long seed) {
+			SplittableRandom random = new SplittableRandom(seed);
+			Node[] path = new Node[board.getColumns() * board.getRows() + 1];
+			for (long n = 1; !stop; n++) {
+				if (playouts.getAndIncrement() >= maxPlayouts) {
+					playouts.decrementAndGet();
+					break;
+				}
+				playout(random, path);
+				if (n % CLOCK_INTERVAL == 0 && System.nanoTime() > deadline) {
+					break;
+				}
+			}
+		}
+
+		private void playout(SplittableRandom random, Node[] path) {
+			BoardModel position = board.copy();
+			Node node = root;
+			node.visits.incrementAndGet();
+			path[0] = node;
+			int length = 1;
+			// 1 if player 1 won, 2 if player 2 won, 0 for a tie, -1 while open
+			int winner = -1;
+			while (winner < 0) {
+				Node[] children = node.children;
+				if (children == null) {
+					// a leaf gets its children on its second visit
+					if (node.visits.get() < 2) {
+						break;
+					}
+					children = expand(node, position);
+				}
+				node = select(node, children);
+				// virtual loss: the visit counts before its result
+				node.visits.incrementAndGet();
+				position.play(node.column);
+				path[length++] = node;
+				if (position.lastStoneWins()) {
+					winner = node.player1 ? 1 : 2;
+				} else if (position.isTie()) {
+					winner = 0;
+				}
+			}
+			if (length - 1 > depth.get()) {
+				depth.accumulateAndGet(length - 1, Math::max);
+			}
+			if (winner < 0) {
+				winner = finish(position, random);
+			}
+			for (int i = 0; i < length; i++) {
+				Node visited = path[i];
+				if (winner == 0) {
+					visited.reward.incrementAndGet();
+				} else if (visited.player1 == (winner == 1)) {
+					visited.reward.addAndGet(2);
+				}
+			}
+		}
+
+		/**
+		 * Plays random moves until the game is over
+		 *
+		 * @return 1 if player 1 won, 2 if player 2 won, 0 for a tie
+		 */
+		private int finish(BoardModel position, SplittableRandom random) {
+			int columns = position.getColumns();
+			while (true) {
+				boolean player1 = position.isPlayer1ToMove();
+				int column = random.nextInt(columns);
+				while (!position.canPlay(column)) {
+					column = random.nextInt(columns);
+				}
+				position.play(column);
+				if (position.lastStoneWins()) {
+					return player1 ? 1 : 2;
+				} else if (position.isTie()) {
+					return 0;
+				}
+			}
+		}
+
+		/**
+		 * @return the child with the highest upper confidence bound, a child
+		 *         never tried first
+		 */
+		private Node select(Node parent, Node[] children) {
+			double logVisits = Math.log(Math.max(1, parent.visits.get()));
+			Node best = null;
+			double bestValue = Double.NEGATIVE_INFINITY;
+			for (Node child : children) {
+				int visits = child.visits.get();
+				if (visits == 0) {
+					return child;
+				}
+				double value = child.reward.get() / (2.0 * visits) + exploration * Math.sqrt(logVisits / visits);
+				if (value > bestValue) {
+					bestValue = value;
+					best = child;
+				}
+			}
+			return best;
+		}
+
+		private Node[] expand(Node node, BoardModel position) {
+			synchronized (node) {
+				if (node.children == null) {
+					boolean player1 = position.isPlayer1ToMove();
+					int count = 0;
+					Node[] children = new Node[order.length];
+					for (int column : order) {
+						if (position.canPlay(column)) {
+							children[count++] = new Node(column, player1);
+						}
+					}
+					Node[] playable = new Node[count];
+					System.arraycopy(children, 0, playable, 0, count);
+					node.children = playable;
+				}
+				return node.children;
+			}
+		}
+	}
+}
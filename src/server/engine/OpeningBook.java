@@ -0,0 +1,143 @@
+package server.engine;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import server.models.BoardModel;
+
+/**
+ * The searched moves of all early positions of one board size, read from a
+ * file written by {@link OpeningBookBuilder}. The file is memory-mapped, so
+ * the book costs no heap and the operating system shares its pages.
+ *
+ * The file starts with a header, followed by fixed-size entries sorted by
+ * the canonical hash of the position (see
+ * {@link BoardModel#getCanonicalHash()}), so a lookup is a binary search. A
+ * position and its mirror image share one entry, the move is stored for the
+ * orientation with the smaller hash.
+ */
+public class OpeningBook {
+	public static final int MAGIC = 0x43344F42;
+	public static final int VERSION = 1;
+
+	/**
+	 * magic, version, columns, rows, win length, plies, entry count, unused
+	 */
+	static final int HEADER_BYTES = 8 * 4;
+	/**
+	 * key (long), score (short), column (byte), search depth (byte)
+	 */
+	static final int ENTRY_BYTES = 12;
+
+	private final MappedByteBuffer entries;
+	private final int columns;
+	private final int rows;
+	private final int winLength;
+	private final int plies;
+	private final int size;
+
+	private OpeningBook(MappedByteBuffer entries, int columns, int rows, int winLength, int plies, int size) {
+		this.entries = entries;
+		this.columns = columns;
+		this.rows = rows;
+		this.winLength = winLength;
+		this.plies = plies;
+		this.size = size;
+	}
+
+	/**
+	 * Maps the file into memory
+	 *
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 *             if the file cannot be read or is not an opening book
+	 */
+	public static OpeningBook open(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			// the mapping stays valid after the channel is closed
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+				throw new IOException("not an opening book: " + file);
+			}
+			int size = buffer.getInt(24);
+			if (size < 0 || buffer.capacity() != HEADER_BYTES + (long) size * ENTRY_BYTES) {
+				throw new IOException("truncated opening book: " + file);
+			}
+			return new OpeningBook(buffer, buffer.getInt(8), buffer.getInt(12), buffer.getInt(16), buffer.getInt(20),
+					size);
+		}
+	}
+
+	/**
+	 * @param board
+	 * @return whether the position is early enough and on a board of the
+	 *         size of this book
+	 */
+	public boolean covers(BoardModel board) {
+		return board.getColumns() == columns && board.getRows() == rows && board.getWinLength() == winLength
+				&& board.getMoveCount() <= plies;
+	}
+
+	/**
+	 * Safe to call from any thread
+	 *
+	 * @param board
+	 * @return the stored move for the player to move with its score and search
+	 *         depth, or null if the position is not in the book
+	 */
+	public SearchResult lookup(BoardModel board) {
+		if (!covers(board)) {
+			return null;
+		}
+		long key = board.getCanonicalHash();
+		int low = 0;
+		int high = size - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int offset = HEADER_BYTES + middle * ENTRY_BYTES;
+			long found = entries.getLong(offset);
+			if (found < key) {
+				low = middle + 1;
+			} else if (found > key) {
+				high = middle - 1;
+			} else {
+				int column = entries.get(offset + 10);
+				if (!board.isCanonical()) {
+					column = board.mirrorColumn(column);
+				}
+				return new SearchResult(column, entries.getShort(offset + 8), entries.get(offset + 11), 0, 0, 0, 0);
+			}
+		}
+		return null;
+	}
+
+	public int getColumns() {
+		return columns;
+	}
+
+	public int getRows() {
+		return rows;
+	}
+
+	public int getWinLength() {
+		return winLength;
+	}
+
+	/**
+	 * @return the most stones a position in the book has
+	 */
+	public int getPlies() {
+		return plies;
+	}
+
+	/**
+	 * @return the number of positions
+	 */
+	public int size() {
+		return size;
+	}
+}
@@ -0,0 +1,145 @@
+package server.engine;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import server.metrics.MetricsRegistry;
+import server.models.BoardModel;
+
+/**
+ * Writes an {@link OpeningBook}: visits every position with up to the given
+ * number of stones which is not decided yet, once per mirror pair, searches
+ * each with the engine and writes the moves sorted by key.
+ *
+ * Runs offline, e.g. OpeningBookBuilder -g 7x6x4 -n 6 -b 2000 -t 8 -o
+ * save/openingbook.bin
+ */
+public class OpeningBookBuilder {
+	public static final String DEFAULT_FILE = "save/openingbook.bin";
+
+	private final SearchEngine engine;
+	private final int plies;
+	private final long budgetMillis;
+
+	/**
+	 * @param engine
+	 *            searches the positions, without an opening book
+	 * @param plies
+	 *            the most stones a position in the book has
+	 * @param budgetMillis
+	 *            the search time per position
+	 */
+	public OpeningBookBuilder(SearchEngine engine, int plies, long budgetMillis) {
+		this.engine = engine;
+		this.plies = plies;
+		this.budgetMillis = budgetMillis;
+	}
+
+	/**
+	 * @param empty
+	 *            an empty board of the size of the book
+	 * @param file
+	 * @return the number of positions written
+	 * @throws IOException
+	 */
+	public int build(BoardModel empty, Path file) throws IOException {
+		ArrayList<BoardModel> positions = new ArrayList<>();
+		collect(empty.copy(), new HashSet<Long>(), positions);
+		long[][] entries = new long[positions.size()][];
+		for (int i = 0; i < positions.size(); i++) {
+			BoardModel board = positions.get(i);
+			SearchResult result = engine.search(board, budgetMillis);
+			// stored for the orientation with the smaller hash
+			int column = board.isCanonical() ? result.getColumn() : board.mirrorColumn(result.getColumn());
+			entries[i] = new long[] { board.getCanonicalHash(), result.getScore(), column, result.getDepth() };
+			if ((i + 1) % 100 == 0) {
+				System.out.println((i + 1) + "/" + positions.size() + " positions searched");
+			}
+		}
+		Arrays.sort(entries, (a, b) -> Long.compare(a[0], b[0]));
+		write(empty, file, entries);
+		return entries.length;
+	}
+
+	private void collect(BoardModel board, HashSet<Long> seen, ArrayList<BoardModel> positions) {
+		if (!seen.add(board.getCanonicalHash())) {
+			return;
+		}
+		positions.add(board.copy());
+		if (board.getMoveCount() == plies) {
+			return;
+		}
+		for (int column = 0; column < board.getColumns(); column++) {
+			if (board.play(column)) {
+				if (!board.lastStoneWins() && !board.isTie()) {
+					collect(board, seen, positions);
+				}
+				board.undo();
+			}
+		}
+	}
+
+	private void write(BoardModel empty, Path file, long[][] entries) throws IOException {
+		if (file.getParent() != null) {
+			Files.createDirectories(file.getParent());
+		}
+		Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+			out.writeInt(OpeningBook.MAGIC);
+			out.writeInt(OpeningBook.VERSION);
+			out.writeInt(empty.getColumns());
+			out.writeInt(empty.getRows());
+			out.writeInt(empty.getWinLength());
+			out.writeInt(plies);
+			out.writeInt(entries.length);
+			out.writeInt(0);
+			for (long[] entry : entries) {
+				out.writeLong(entry[0]);
+				out.writeShort((int) entry[1]);
+				out.writeByte((int) entry[2]);
+				out.writeByte((int) Math.min(entry[3], 127));
+			}
+		}
+		// a server never maps a half written book
+		Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	public static void main(String[] args) throws IOException {
+		String size = "7x6x4";
+		int plies = 4;
+		long budget = SearchEngine.DEFAULT_BUDGET_MILLIS;
+		int threads = SearchEngine.DEFAULT_THREADS;
+		int megabytes = 64;
+		String file = DEFAULT_FILE;
+		for (int i = 0; i + 1 < args.length; i++) {
+			if (args[i].equals("-g")) {
+				size = args[++i];
+			} else if (args[i].equals("-n")) {
+				plies = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-b")) {
+				budget = Long.parseLong(args[++i]);
+			} else if (args[i].equals("-t")) {
+				threads = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-m")) {
+				megabytes = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-o")) {
+				file = args[++i];
+			}
+		}
+		MetricsRegistry metrics = new MetricsRegistry();
+		OpeningBookBuilder builder = new OpeningBookBuilder(new SearchEngine(metrics, megabytes, threads), plies, budget);
+		long start = System.currentTimeMillis();
+		int written = builder.build(EngineBenchmark.parse(size, ""), Paths.get(file));
+		System.out.println(written + " positions of up to " + plies + " stones written to " + file + " in "
+				+ (System.currentTimeMillis() - start) / 1000 + " s");
+		System.out.print(metrics.report());
+	}
+}
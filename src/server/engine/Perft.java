@@ -0,0 +1,133 @@
+package server.engine;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import server.models.BoardModel;
+
+/**
+ * Counts the move sequences of a given length from a position (perft), with
+ * the moves and wins of {@link BoardModel}. A game which is won or tied
+ * earlier ends there and is not counted. The counts of the classic board are
+ * known (7, 49, ..., 117649 after six plies, 823536 after seven, where a full
+ * column first takes away a move), so perft checks the game core and measures
+ * how fast it plays and detects wins.
+ *
+ * The first plies are split into fork/join tasks, each works on its own copy
+ * of the board.
+ *
+ * Usage: Perft [-g 7x6x4] [-d depth] [-t threads]
+ */
+public class Perft {
+	/**
+	 * Subtrees with fewer plies left are counted by one task
+	 */
+	private static final int SPLIT_DEPTH = 5;
+
+	private Perft() {
+	}
+
+	/**
+	 * @param board
+	 *            is not changed
+	 * @param depth
+	 * @return the number of move sequences of the length
+	 */
+	public static long count(BoardModel board, int depth) {
+		return countOn(board.copy(), depth);
+	}
+
+	/**
+	 * @param board
+	 *            is not changed
+	 * @param depth
+	 * @param pool
+	 * @return the same as {@link #count(BoardModel, int)}
+	 */
+	public static long count(BoardModel board, int depth, ForkJoinPool pool) {
+		return pool.invoke(new Task(board.copy(), depth));
+	}
+
+	private static long countOn(BoardModel board, int depth) {
+		if (depth == 0) {
+			return 1;
+		}
+		long nodes = 0;
+		for (int column = 0; column < board.getColumns(); column++) {
+			if (board.play(column)) {
+				if (depth == 1) {
+					nodes++;
+				} else if (!board.lastStoneWins() && !board.isTie()) {
+					nodes += countOn(board, depth - 1);
+				}
+				board.undo();
+			}
+		}
+		return nodes;
+	}
+
+	private static final class Task extends RecursiveTask<Long> {
+		private static final long serialVersionUID = 1L;
+
+		private final BoardModel board;
+		private final int depth;
+
+		private Task(BoardModel board, int depth) {
+			this.board = board;
+			this.depth = depth;
+		}
+
+		@Override
+		protected Long compute() {
+			if (depth < SPLIT_DEPTH) {
+				return countOn(board, depth);
+			}
+			Task[] tasks = new Task[board.getColumns()];
+			for (int column = 0; column < tasks.length; column++) {
+				if (board.play(column)) {
+					// a game ended by this move is shorter than the depth
+					if (!board.lastStoneWins() && !board.isTie()) {
+						tasks[column] = new Task(board.copy(), depth - 1);
+						tasks[column].fork();
+					}
+					board.undo();
+				}
+			}
+			long nodes = 0;
+			// joined in reverse, the last forked task is the most likely to
+			// still be in the own queue
+			for (int column = tasks.length - 1; column >= 0; column--) {
+				if (tasks[column] != null) {
+					nodes += tasks[column].join();
+				}
+			}
+			return nodes;
+		}
+	}
+
+	public static void main(String[] args) {
+		String size = "7x6x4";
+		int depth = 9;
+		int threads = Runtime.getRuntime().availableProcessors();
+		for (int i = 0; i + 1 < args.length; i++) {
+			if (args[i].equals("-g")) {
+				size = args[++i];
+			} else if (args[i].equals("-d")) {
+				depth = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-t")) {
+				threads = Math.max(1, Integer.parseInt(args[++i]));
+			}
+		}
+		BoardModel board = EngineBenchmark.parse(size, "");
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		System.out.println("perft " + size + ", " + threads + " threads");
+		for (int d = 1; d <= depth; d++) {
+			long start = System.nanoTime();
+			long nodes = count(board, d, pool);
+			long nanos = System.nanoTime() - start;
+			System.out.printf("depth=%d nodes=%d time=%dms nodes/s=%d%n", d, nodes, nanos / 1000000,
+					nodes * 1000000000L / Math.max(1, nanos));
+		}
+		pool.shutdown();
+	}
+}
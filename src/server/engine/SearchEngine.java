@@ -0,0 +1,606 @@
+package server.engine;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import server.metrics.Histogram;
+import server.metrics.MetricsRegistry;
+import server.models.BoardModel;
+
+/**
+ * Finds the best move for the player to move with a negamax search and
+ * alpha-beta pruning. The search deepens one ply at a time until the time
+ * budget is used up and answers with the best move of the deepest completed
+ * iteration.
+ *
+ * Moves are tried center first, after the best move the transposition table
+ * remembers for the position. Positions at the horizon are rated by how many
+ * possible lines run through the fields of each player.
+ *
+ * Scores are from the view of the player to move. A won position scores
+ * {@link #WIN} minus the plies until the win, so a quick win beats a slow one.
+ *
+ * A search runs on the calling thread and on up to threads - 1 helpers (Lazy
+ * SMP). The helpers search the same position with a slightly different
+ * depth and move order and share what they find through the lock-free
+ * transposition table, so the calling thread cuts off more of the tree. The
+ * helpers of all searches share one pool, which caps the cores the engine
+ * takes from the games. Several searches may run at once, the table is kept
+ * between searches.
+ *
+ * Positions found in the {@link OpeningBook} are answered from the book
+ * without a search.
+ */
+public class SearchEngine implements Engine {
+	public static final long DEFAULT_BUDGET_MILLIS = 1000;
+	public static final int DEFAULT_TABLE_MEGABYTES = 16;
+	/**
+	 * Half of the cores, the other half is left to the games
+	 */
+	public static final int DEFAULT_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+	public static final int WIN = 10000;
+
+	private static final int MAX_PLY = BoardModel.MAX_SIZE * BoardModel.MAX_SIZE;
+	private static final int INFINITY = WIN + MAX_PLY + 1;
+	/**
+	 * Nodes between two looks at the clock
+	 */
+	private static final int CLOCK_INTERVAL = 1024;
+
+	private final TranspositionTable table;
+	private final int threads;
+	private final ForkJoinPool helpers;
+	private final ConcurrentHashMap<Long, int[]> weights = new ConcurrentHashMap<>();
+
+	private final LongAdder searches;
+	private final LongAdder nodes;
+	private final LongAdder probes;
+	private final LongAdder hits;
+	private final LongAdder searchNanos;
+	private final Histogram searchTime;
+	private final LongAdder bookHits;
+	private volatile OpeningBook book;
+
+	public SearchEngine(MetricsRegistry metrics) {
+		this(metrics, DEFAULT_TABLE_MEGABYTES);
+	}
+
+	/**
+	 * @param metrics
+	 * @param tableMegabytes
+	 *            the size of the transposition table
+	 */
+	public SearchEngine(MetricsRegistry metrics, int tableMegabytes) {
+		this(metrics, tableMegabytes, DEFAULT_THREADS);
+	}
+
+	/**
+	 * @param metrics
+	 * @param tableMegabytes
+	 *            the size of the transposition table
+	 * @param threads
+	 *            the threads of one search including the calling thread, the
+	 *            helper threads of all searches together never exceed threads
+	 *            - 1
+	 */
+	public SearchEngine(MetricsRegistry metrics, int tableMegabytes, int threads) {
+		this(metrics, "engine", tableMegabytes, threads);
+	}
+
+	/**
+	 * @param metrics
+	 * @param prefix
+	 *            of the metric names, so several engines can report apart
+	 * @param tableMegabytes
+	 *            the size of the transposition table
+	 * @param threads
+	 *            the threads of one search including the calling thread
+	 */
+	public SearchEngine(MetricsRegistry metrics, String prefix, int tableMegabytes, int threads) {
+		this.table = new TranspositionTable(tableMegabytes);
+		this.threads = Math.max(1, threads);
+		this.helpers = this.threads == 1 ? null : new ForkJoinPool(this.threads - 1, pool -> {
+			ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+			t.setName("Server:search" + t.getPoolIndex());
+			t.setDaemon(true);
+			return t;
+		}, null, true);
+		this.searches = metrics.counter(prefix + ".searches");
+		this.nodes = metrics.counter(prefix + ".nodes");
+		this.probes = metrics.counter(prefix + ".tt.probes");
+		this.hits = metrics.counter(prefix + ".tt.hits");
+		this.searchNanos = metrics.counter(prefix + ".searchNanos");
+		this.searchTime = metrics.histogram(prefix + ".search");
+		metrics.gauge(prefix + ".nodesPerSecond", () -> {
+			long nanos = searchNanos.sum();
+			return nanos == 0 ? 0 : nodes.sum() * 1000000000L / nanos;
+		});
+		metrics.gauge(prefix + ".tt.hitPermille", () -> {
+			long p = probes.sum();
+			return p == 0 ? 0 : hits.sum() * 1000 / p;
+		});
+		this.bookHits = metrics.counter(prefix + ".book.hits");
+		metrics.gauge(prefix + ".threads", () -> this.threads);
+	}
+
+	/**
+	 * @param score
+	 * @return whether the score is a forced win for the player to move
+	 */
+	public static boolean isWin(int score) {
+		return score > WIN - MAX_PLY;
+	}
+
+	/**
+	 * @param score
+	 * @return whether the score is a forced loss for the player to move
+	 */
+	public static boolean isLoss(int score) {
+		return score < -WIN + MAX_PLY;
+	}
+
+	@Override
+	public SearchResult search(BoardModel board, long budgetMillis) {
+		return search(board, budgetMillis, MAX_PLY);
+	}
+
+	/**
+	 * Searches a copy of the board, the board itself is not changed
+	 *
+	 * @param board
+	 * @param budgetMillis
+	 *            the search answers after about this time
+	 * @param maxDepth
+	 *            stop after this many plies even if there is time left
+	 * @return the best move, never null
+	 */
+	public SearchResult search(BoardModel board, long budgetMillis, int maxDepth) {
+		long start = System.nanoTime();
+		OpeningBook book = this.book;
+		SearchResult known = book == null ? null : book.lookup(board);
+		if (known != null) {
+			bookHits.increment();
+			return known;
+		}
+		table.newSearch();
+		Shared shared = new Shared(start + TimeUnit.MILLISECONDS.toNanos(budgetMillis));
+		Search main = new Search(board.copy(), shared, 0);
+		Search[] helpers = new Search[threads - 1];
+		CountDownLatch finished = new CountDownLatch(helpers.length);
+		for (int i = 0; i < helpers.length; i++) {
+			Search helper = new Search(board.copy(), shared, i + 1);
+			helpers[i] = helper;
+			this.helpers.execute(() -> {
+				try {
+					helper.run(maxDepth);
+				} finally {
+					finished.countDown();
+				}
+			});
+		}
+		SearchResult result = main.run(maxDepth);
+		shared.stop = true;
+		long nodes = main.nodes;
+		long probes = main.probes;
+		long hits = main.hits;
+		if (awaitHelpers(finished)) {
+			for (Search helper : helpers) {
+				nodes += helper.nodes;
+				probes += helper.probes;
+				hits += helper.hits;
+				// a helper may have completed a deeper iteration
+				if (helper.result != null && helper.result.getDepth() > result.getDepth()) {
+					result = helper.result;
+				}
+			}
+		}
+		long elapsed = System.nanoTime() - start;
+		searches.increment();
+		this.nodes.add(nodes);
+		this.probes.add(probes);
+		this.hits.add(hits);
+		searchNanos.add(elapsed);
+		searchTime.record(elapsed);
+		return new SearchResult(result.getColumn(), result.getScore(), result.getDepth(), nodes, elapsed, probes, hits);
+	}
+
+	/**
+	 * Scores every column of the position with a full window, so unlike
+	 * {@link #search} it tells how much worse the other columns are. Runs on
+	 * the calling thread only and deepens until the budget is used up or
+	 * every column is decided.
+	 *
+	 * @param board
+	 *            is not changed
+	 * @param budgetMillis
+	 * @return never null
+	 */
+	public Analysis analyze(BoardModel board, long budgetMillis) {
+		long start = System.nanoTime();
+		table.newSearch();
+		Search search = new Search(board.copy(), new Shared(start + TimeUnit.MILLISECONDS.toNanos(budgetMillis)), 0);
+		int[] scores = search.analyze();
+		long elapsed = System.nanoTime() - start;
+		searches.increment();
+		nodes.add(search.nodes);
+		probes.add(search.probes);
+		hits.add(search.hits);
+		searchNanos.add(elapsed);
+		searchTime.record(elapsed);
+		return new Analysis(scores, search.completed, search.nodes, elapsed);
+	}
+
+	/**
+	 * The helpers stop within a few thousand nodes once the main search is
+	 * done. Helpers still waiting in the pool behind other searches start and
+	 * stop at once, they are not waited for.
+	 *
+	 * @return whether all helpers stopped
+	 */
+	private static boolean awaitHelpers(CountDownLatch finished) {
+		try {
+			return finished.await(100, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	/**
+	 * @param book
+	 *            answers the positions it covers, null for none
+	 */
+	public void setOpeningBook(OpeningBook book) {
+		this.book = book;
+	}
+
+	public OpeningBook getOpeningBook() {
+		return book;
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * Forgets all positions, e.g. between benchmark runs. Only call while no
+	 * search runs.
+	 */
+	public void clear() {
+		table.clear();
+	}
+
+	/**
+	 * @param board
+	 * @return per bit of the board the number of lines through the field, 0
+	 *         for the empty bit on top of each column
+	 */
+	private int[] weightsOf(BoardModel board) {
+		long geometry = ((long) board.getColumns() << 16) | (board.getRows() << 8) | board.getWinLength();
+		return weights.computeIfAbsent(geometry, g -> {
+			int columns = board.getColumns();
+			int rows = board.getRows();
+			int k = board.getWinLength();
+			int[] w = new int[columns * board.getColumnBits()];
+			int[][] directions = { { 1, 0 }, { 0, 1 }, { 1, 1 }, { 1, -1 } };
+			for (int column = 0; column < columns; column++) {
+				for (int row = 0; row < rows; row++) {
+					for (int[] d : directions) {
+						// every line of k fields in this direction which
+						// contains the field and lies on the board
+						for (int offset = 0; offset < k; offset++) {
+							int c = column - d[0] * offset;
+							int r = row - d[1] * offset;
+							int ce = c + d[0] * (k - 1);
+							int re = r + d[1] * (k - 1);
+							if (c >= 0 && r >= 0 && r < rows && ce < columns && re >= 0 && re < rows) {
+								w[column * board.getColumnBits() + row]++;
+							}
+						}
+					}
+				}
+			}
+			return w;
+		});
+	}
+
+	/**
+	 * @param columns
+	 * @return the columns sorted from the center outwards
+	 */
+	public static int[] centerFirst(int columns) {
+		int[] order = new int[columns];
+		for (int i = 0; i < columns; i++) {
+			// center, left, right, two left, two right, ...
+			order[i] = columns / 2 + (1 - 2 * (i % 2)) * (i + 1) / 2;
+		}
+		return order;
+	}
+
+	/**
+	 * What the threads of one search share besides the table
+	 */
+	private static final class Shared {
+		private final long deadline;
+		private volatile boolean stop = false;
+
+		private Shared(long deadline) {
+			this.deadline = deadline;
+		}
+	}
+
+	/**
+	 * The state of one thread of a search
+	 */
+	private final class Search {
+		private final BoardModel board;
+		private final Shared shared;
+		private final long deadline;
+		private final int[] order;
+		private final int[] weight;
+		/**
+		 * 0 for the calling thread
+		 */
+		private final int helper;
+		private long nodes = 0;
+		private long probes = 0;
+		private long hits = 0;
+		private boolean aborted = false;
+		private boolean clock = false;
+		private int completed = 0;
+		private SearchResult result;
+
+		private Search(BoardModel board, Shared shared, int helper) {
+			this.board = board;
+			this.shared = shared;
+			this.deadline = shared.deadline;
+			this.helper = helper;
+			this.weight = weightsOf(board);
+			this.order = centerFirst(board.getColumns());
+			if (helper % 2 == 1) {
+				// every other helper prefers the right side of the center
+				for (int i = 1; i + 1 < order.length; i += 2) {
+					int left = order[i];
+					order[i] = order[i + 1];
+					order[i + 1] = left;
+				}
+			}
+		}
+
+		private SearchResult run(int maxDepth) {
+			int empty = board.getColumns() * board.getRows() - board.getMoveCount();
+			int bestColumn = -1;
+			int bestScore = 0;
+			if (board.isTie() || board.lastStoneWins()) {
+				result = new SearchResult(-1, 0, 0, 0, 0, 0, 0);
+				return result;
+			}
+			for (int column : order) {
+				if (board.canPlay(column)) {
+					// always answer with a legal move
+					bestColumn = column;
+					break;
+				}
+			}
+			// the helpers start one ply deeper every other thread, so the
+			// threads are spread over two depths
+			for (int depth = 1 + helper % 2; depth <= Math.min(maxDepth, empty); depth++) {
+				// the first iteration of the calling thread always completes
+				clock = helper != 0 || depth > 1;
+				int[] root = root(depth, bestColumn);
+				if (aborted) {
+					break;
+				}
+				bestColumn = root[0];
+				bestScore = root[1];
+				completed = depth;
+				if (isWin(bestScore) || isLoss(bestScore)) {
+					// solved, a deeper search finds nothing new
+					shared.stop = true;
+					break;
+				}
+			}
+			result = new SearchResult(bestColumn, bestScore, completed, 0, 0, 0, 0);
+			return result;
+		}
+
+		/**
+		 * @return per column the score after the deepest completed iteration
+		 */
+		private int[] analyze() {
+			int[] scores = new int[board.getColumns()];
+			Arrays.fill(scores, Analysis.FULL);
+			if (board.isTie() || board.lastStoneWins()) {
+				return scores;
+			}
+			int empty = board.getColumns() * board.getRows() - board.getMoveCount();
+			for (int depth = 1; depth <= empty; depth++) {
+				// the first iteration always completes
+				clock = depth > 1;
+				int[] next = new int[scores.length];
+				Arrays.fill(next, Analysis.FULL);
+				boolean decided = true;
+				for (int column : order) {
+					if (!board.canPlay(column)) {
+						continue;
+					}
+					board.play(column);
+					int score;
+					if (board.lastStoneWins()) {
+						score = WIN - 1;
+					} else if (board.isTie()) {
+						score = 0;
+					} else {
+						score = -negamax(depth - 1, -INFINITY, INFINITY, 1);
+					}
+					board.undo();
+					if (aborted) {
+						break;
+					}
+					next[column] = score;
+					decided &= isWin(score) || isLoss(score);
+				}
+				if (aborted) {
+					break;
+				}
+				scores = next;
+				completed = depth;
+				if (decided) {
+					break;
+				}
+			}
+			return scores;
+		}
+
+		/**
+		 * @return the best column and its score
+		 */
+		private int[] root(int depth, int previousBest) {
+			int alpha = -INFINITY;
+			int bestColumn = -1;
+			for (int i = -1; i < order.length; i++) {
+				int column = i < 0 ? previousBest : order[i];
+				if ((i >= 0 && column == previousBest) || !board.canPlay(column)) {
+					continue;
+				}
+				board.play(column);
+				int score;
+				if (board.lastStoneWins()) {
+					score = WIN - 1;
+				} else if (board.isTie()) {
+					score = 0;
+				} else {
+					score = -negamax(depth - 1, -INFINITY, -alpha, 1);
+				}
+				board.undo();
+				if (aborted) {
+					break;
+				}
+				if (score > alpha) {
+					alpha = score;
+					bestColumn = column;
+				}
+			}
+			return new int[] { bestColumn, alpha };
+		}
+
+		private int negamax(int depth, int alpha, int beta, int ply) {
+			nodes++;
+			if (clock && (nodes % CLOCK_INTERVAL) == 0 && (shared.stop || System.nanoTime() > deadline)) {
+				aborted = true;
+			}
+			if (aborted) {
+				return 0;
+			}
+			// the player to move wins at once if it can
+			for (int column : order) {
+				if (board.canPlay(column)) {
+					board.play(column);
+					boolean won = board.lastStoneWins();
+					board.undo();
+					if (won) {
+						return WIN - ply - 1;
+					}
+				}
+			}
+			if (depth == 0) {
+				return evaluate();
+			}
+
+			long hash = board.getHash();
+			long entry = table.probe(hash);
+			probes++;
+			int tableMove = -1;
+			if (entry != 0) {
+				hits++;
+				tableMove = TranspositionTable.move(entry);
+				if (TranspositionTable.depth(entry) >= depth) {
+					int score = fromTable(TranspositionTable.score(entry), ply);
+					int bound = TranspositionTable.bound(entry);
+					if (bound == TranspositionTable.EXACT || (bound == TranspositionTable.LOWER && score >= beta)
+							|| (bound == TranspositionTable.UPPER && score <= alpha)) {
+						return score;
+					}
+				}
+			}
+
+			int alphaBefore = alpha;
+			int best = -INFINITY;
+			int bestMove = -1;
+			for (int i = -1; i < order.length; i++) {
+				int column = i < 0 ? tableMove : order[i];
+				if (column < 0 || (i >= 0 && column == tableMove) || !board.canPlay(column)) {
+					continue;
+				}
+				board.play(column);
+				int score = board.isTie() ? 0 : -negamax(depth - 1, -beta, -alpha, ply + 1);
+				board.undo();
+				if (aborted) {
+					return 0;
+				}
+				if (score > best) {
+					best = score;
+					bestMove = column;
+				}
+				if (best > alpha) {
+					alpha = best;
+				}
+				if (alpha >= beta) {
+					break;
+				}
+			}
+			int bound = best <= alphaBefore ? TranspositionTable.UPPER
+					: best >= beta ? TranspositionTable.LOWER : TranspositionTable.EXACT;
+			table.store(hash, toTable(best, ply), depth, bound, bestMove);
+			return best;
+		}
+
+		/**
+		 * @return the lines through the own stones minus the lines through
+		 *         the stones of the opponent
+		 */
+		private int evaluate() {
+			boolean player1 = board.isPlayer1ToMove();
+			return sum(board.getStones(player1)) - sum(board.getStones(!player1));
+		}
+
+		private int sum(long[] stones) {
+			int total = 0;
+			for (int word = 0; word < stones.length; word++) {
+				long bits = stones[word];
+				while (bits != 0) {
+					total += weight[(word << 6) + Long.numberOfTrailingZeros(bits)];
+					bits &= bits - 1;
+				}
+			}
+			return total;
+		}
+	}
+
+	/**
+	 * Wins are stored as plies from the position, not from the root, so an
+	 * entry is valid wherever the position is reached
+	 */
+	private static int toTable(int score, int ply) {
+		if (isWin(score)) {
+			return score + ply;
+		} else if (isLoss(score)) {
+			return score - ply;
+		}
+		return score;
+	}
+
+	private static int fromTable(int score, int ply) {
+		if (isWin(score)) {
+			return score - ply;
+		} else if (isLoss(score)) {
+			return score + ply;
+		}
+		return score;
+	}
+}
@@ -0,0 +1,79 @@
+package server.engine;
+
+/**
+ * The outcome of one search, see {@link SearchEngine#search}
+ */
+public class SearchResult {
+	private final int column;
+	private final int score;
+	private final int depth;
+	private final long nodes;
+	private final long nanos;
+	private final long tableProbes;
+	private final long tableHits;
+
+	public SearchResult(int column, int score, int depth, long nodes, long nanos, long tableProbes, long tableHits) {
+		this.column = column;
+		this.score = score;
+		this.depth = depth;
+		this.nodes = nodes;
+		this.nanos = nanos;
+		this.tableProbes = tableProbes;
+		this.tableHits = tableHits;
+	}
+
+	/**
+	 * @return the best column or -1 if the board is full
+	 */
+	public int getColumn() {
+		return column;
+	}
+
+	/**
+	 * @return the score for the player to move, see
+	 *         {@link SearchEngine#isWin(int)}
+	 */
+	public int getScore() {
+		return score;
+	}
+
+	/**
+	 * @return the depth of the last completed iteration
+	 */
+	public int getDepth() {
+		return depth;
+	}
+
+	public long getNodes() {
+		return nodes;
+	}
+
+	public long getNanos() {
+		return nanos;
+	}
+
+	public long getNodesPerSecond() {
+		return nanos == 0 ? 0 : nodes * 1000000000L / nanos;
+	}
+
+	public long getTableProbes() {
+		return tableProbes;
+	}
+
+	public long getTableHits() {
+		return tableHits;
+	}
+
+	/**
+	 * @return hits per thousand probes of the transposition table
+	 */
+	public long getTableHitPermille() {
+		return tableProbes == 0 ? 0 : tableHits * 1000 / tableProbes;
+	}
+
+	@Override
+	public String toString() {
+		return "column=" + column + " score=" + score + " depth=" + depth + " nodes=" + nodes + " nps="
+				+ getNodesPerSecond() + " ttHits=" + getTableHitPermille() + "/1000";
+	}
+}
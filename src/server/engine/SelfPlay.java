@@ -0,0 +1,261 @@
+package server.engine;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import server.models.BoardModel;
+
+/**
+ * Plays games of random moves with the rules of {@link BoardModel} and writes
+ * them to a compact record file, e.g. as training data or to replay them
+ * against a changed game core.
+ *
+ * The file starts with a header (magic, version, columns, rows, win length,
+ * game count as long). Each game is the number of moves (short), the result
+ * (byte: 0 tie, 1 player 1 won, 2 player 2 won) and the columns, two per
+ * byte. The games are generated in chunks on a fork/join pool, every chunk
+ * with its own seed, so the same seed always writes the same file.
+ *
+ * Usage: SelfPlay [-g 7x6x4] [-n games] [-t threads] [-s seed] [-o file],
+ * or SelfPlay -v file to replay a file and check every result.
+ */
+public class SelfPlay {
+	public static final int MAGIC = 0x43345350;
+	public static final int VERSION = 1;
+	public static final String DEFAULT_FILE = "save/selfplay.bin";
+
+	/**
+	 * Games per task
+	 */
+	private static final int CHUNK = 4096;
+	/**
+	 * Chunks held in memory before they are written
+	 */
+	private static final int BATCH = 256;
+
+	private SelfPlay() {
+	}
+
+	/**
+	 * @param empty
+	 *            an empty board of the size to play
+	 * @param games
+	 * @param seed
+	 * @param pool
+	 * @param file
+	 * @throws IOException
+	 */
+	public static void generate(BoardModel empty, long games, long seed, ForkJoinPool pool, Path file)
+			throws IOException {
+		if (file.getParent() != null) {
+			Files.createDirectories(file.getParent());
+		}
+		Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary),
+				1 << 16))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(empty.getColumns());
+			out.writeInt(empty.getRows());
+			out.writeInt(empty.getWinLength());
+			out.writeLong(games);
+			long chunks = (games + CHUNK - 1) / CHUNK;
+			for (long first = 0; first < chunks; first += BATCH) {
+				int count = (int) Math.min(BATCH, chunks - first);
+				byte[][] written = pool.invoke(new Chunks(empty, games, seed, first, count));
+				for (byte[] chunk : written) {
+					out.write(chunk);
+				}
+			}
+		}
+		Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * Replays every game of the file on a {@link BoardModel}
+	 *
+	 * @param file
+	 * @return the number of games of each result: ties, won by player 1, won
+	 *         by player 2
+	 * @throws IOException
+	 *             if the file is not a record file or a game does not replay
+	 *             to its result
+	 */
+	public static long[] verify(Path file) throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				throw new IOException("not a self-play record: " + file);
+			}
+			int columns = in.readInt();
+			int rows = in.readInt();
+			int winLength = in.readInt();
+			long games = in.readLong();
+			if (!BoardModel.isValid(columns, rows, winLength)) {
+				throw new IOException("invalid board size in " + file);
+			}
+			long[] results = new long[3];
+			byte[] moves = new byte[(columns * rows + 1) / 2];
+			for (long game = 0; game < games; game++) {
+				int length = in.readShort();
+				int result = in.readByte();
+				if (length < 1 || length > columns * rows || result < 0 || result > 2) {
+					throw new IOException("corrupt game " + game + " in " + file);
+				}
+				in.readFully(moves, 0, (length + 1) / 2);
+				BoardModel board = new BoardModel(columns, rows, winLength);
+				for (int i = 0; i < length; i++) {
+					boolean player1 = board.isPlayer1ToMove();
+					if (!board.play((moves[i >> 1] >> ((i & 1) * 4)) & 0xf)) {
+						throw new IOException("illegal move " + i + " in game " + game);
+					}
+					boolean over = board.lastStoneWins() || board.isTie();
+					if (over != (i == length - 1)) {
+						throw new IOException("game " + game + " does not end with move " + length);
+					}
+					if (over && result != (board.lastStoneWins() ? (player1 ? 1 : 2) : 0)) {
+						throw new IOException("wrong result of game " + game);
+					}
+				}
+				results[result]++;
+			}
+			try {
+				in.readByte();
+				throw new IOException("data after the last game in " + file);
+			} catch (EOFException e) {
+				return results;
+			}
+		}
+	}
+
+	/**
+	 * Plays one game of random moves and writes its record, see
+	 * {@link SelfPlay}
+	 *
+	 * @return the bytes written
+	 */
+	private static int play(BoardModel board, SplittableRandom random, byte[] record, int offset) {
+		int columns = board.getColumns();
+		int start = offset + 3;
+		while (true) {
+			boolean player1 = board.isPlayer1ToMove();
+			int column = random.nextInt(columns);
+			while (!board.canPlay(column)) {
+				column = random.nextInt(columns);
+			}
+			board.play(column);
+			int i = board.getMoveCount() - 1;
+			if ((i & 1) == 0) {
+				record[start + (i >> 1)] = (byte) column;
+			} else {
+				record[start + (i >> 1)] |= column << 4;
+			}
+			int result = board.lastStoneWins() ? (player1 ? 1 : 2) : board.isTie() ? 0 : -1;
+			if (result >= 0) {
+				int length = board.getMoveCount();
+				record[offset] = (byte) (length >> 8);
+				record[offset + 1] = (byte) length;
+				record[offset + 2] = (byte) result;
+				return 3 + (length + 1) / 2;
+			}
+		}
+	}
+
+	/**
+	 * Generates a range of chunks, split in halves down to single chunks
+	 */
+	private static final class Chunks extends RecursiveTask<byte[][]> {
+		private static final long serialVersionUID = 1L;
+
+		private final BoardModel empty;
+		private final long games;
+		private final long seed;
+		private final long first;
+		private final int count;
+
+		private Chunks(BoardModel empty, long games, long seed, long first, int count) {
+			this.empty = empty;
+			this.games = games;
+			this.seed = seed;
+			this.first = first;
+			this.count = count;
+		}
+
+		@Override
+		protected byte[][] compute() {
+			byte[][] chunks = new byte[count][];
+			if (count == 1) {
+				chunks[0] = chunk(first);
+				return chunks;
+			}
+			int half = count / 2;
+			Chunks left = new Chunks(empty, games, seed, first, half);
+			Chunks right = new Chunks(empty, games, seed, first + half, count - half);
+			right.fork();
+			byte[][] done = left.compute();
+			System.arraycopy(done, 0, chunks, 0, half);
+			done = right.join();
+			System.arraycopy(done, 0, chunks, half, count - half);
+			return chunks;
+		}
+
+		private byte[] chunk(long index) {
+			int size = (int) Math.min(CHUNK, games - index * CHUNK);
+			int cells = empty.getColumns() * empty.getRows();
+			byte[] record = new byte[size * (3 + (cells + 1) / 2)];
+			SplittableRandom random = new SplittableRandom(seed + index * 0x9E3779B97F4A7C15L);
+			int length = 0;
+			for (int game = 0; game < size; game++) {
+				length += play(empty.copy(), random, record, length);
+			}
+			byte[] used = new byte[length];
+			System.arraycopy(record, 0, used, 0, length);
+			return used;
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		String size = "7x6x4";
+		long games = 1000000;
+		int threads = Runtime.getRuntime().availableProcessors();
+		long seed = 1;
+		String file = DEFAULT_FILE;
+		for (int i = 0; i + 1 < args.length; i++) {
+			if (args[i].equals("-g")) {
+				size = args[++i];
+			} else if (args[i].equals("-n")) {
+				games = Long.parseLong(args[++i]);
+			} else if (args[i].equals("-t")) {
+				threads = Math.max(1, Integer.parseInt(args[++i]));
+			} else if (args[i].equals("-s")) {
+				seed = Long.parseLong(args[++i]);
+			} else if (args[i].equals("-o")) {
+				file = args[++i];
+			} else if (args[i].equals("-v")) {
+				long start = System.currentTimeMillis();
+				long[] results = verify(Paths.get(args[++i]));
+				System.out.println("ok: " + results[1] + " won by player 1, " + results[2] + " by player 2, "
+						+ results[0] + " ties in " + (System.currentTimeMillis() - start) + " ms");
+				return;
+			}
+		}
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		long start = System.nanoTime();
+		generate(EngineBenchmark.parse(size, ""), games, seed, pool, Paths.get(file));
+		long nanos = System.nanoTime() - start;
+		pool.shutdown();
+		System.out.printf("%d games of %s written to %s in %d ms, %d games/min with %d threads, %d bytes%n", games,
+				size, file, nanos / 1000000, games * 60000000000L / Math.max(1, nanos), threads,
+				Files.size(Paths.get(file)));
+	}
+}
@@ -0,0 +1,131 @@
+package server.engine;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed-size hash table of searched positions, indexed by the Zobrist hash
+ * of the board. Every slot keeps the full hash and one packed entry: score,
+ * depth, bound, best move and the search which stored it.
+ *
+ * A slot is replaced by a new entry for the same position, by a deeper
+ * search, or once it is left over from an earlier search, so the table never
+ * fills up with stale shallow entries.
+ *
+ * All search threads share the table without locks. A slot keeps the hash
+ * xor the entry instead of the hash, so if two threads write the same slot at
+ * once and a reader sees the hash of one with the entry of the other, the
+ * check fails and the slot counts as empty.
+ */
+public class TranspositionTable {
+	public static final int EXACT = 0;
+	/**
+	 * The score is at least the stored one (the search failed high)
+	 */
+	public static final int LOWER = 1;
+	/**
+	 * The score is at most the stored one (the search failed low)
+	 */
+	public static final int UPPER = 2;
+
+	private static final long VALID = 1L << 63;
+	private static final int SLOT_BYTES = 16;
+
+	private final AtomicLongArray keys;
+	private final AtomicLongArray entries;
+	private final int mask;
+	private volatile int generation = 0;
+
+	/**
+	 * @param megabytes
+	 *            the table gets the largest power of two of slots which fits
+	 */
+	public TranspositionTable(int megabytes) {
+		long slots = Math.max(1, (long) megabytes * 1024 * 1024 / SLOT_BYTES);
+		int size = Integer.highestOneBit((int) Math.min(slots, 1 << 30));
+		this.keys = new AtomicLongArray(size);
+		this.entries = new AtomicLongArray(size);
+		this.mask = size - 1;
+	}
+
+	/**
+	 * @param hash
+	 * @return the packed entry or 0 if the position is not in the table
+	 */
+	public long probe(long hash) {
+		int slot = (int) hash & mask;
+		long entry = entries.get(slot);
+		return entry != 0 && (keys.get(slot) ^ entry) == hash ? entry : 0;
+	}
+
+	/**
+	 * @param hash
+	 * @param score
+	 *            see {@link SearchEngine} for scores of won positions
+	 * @param depth
+	 * @param bound
+	 *            {@link #EXACT}, {@link #LOWER} or {@link #UPPER}
+	 * @param move
+	 *            the best column or -1
+	 */
+	public void store(long hash, int score, int depth, int bound, int move) {
+		int slot = (int) hash & mask;
+		long old = entries.get(slot);
+		int current = generation;
+		if (old != 0 && (keys.get(slot) ^ old) != hash && generation(old) == (current & 0xff) && depth(old) > depth) {
+			return;
+		}
+		long entry = pack(score, depth, bound, move, current);
+		// a racing writer can only make the slot fail the check, never
+		// make a wrong entry pass it
+		keys.lazySet(slot, hash ^ entry);
+		entries.lazySet(slot, entry);
+	}
+
+	/**
+	 * Marks all entries as left over, call before every search. Searches
+	 * running at the same time may share a generation, that only makes
+	 * replacement a bit less eager.
+	 */
+	public void newSearch() {
+		generation++;
+	}
+
+	/**
+	 * Only call while no search runs
+	 */
+	public void clear() {
+		for (int i = 0; i < entries.length(); i++) {
+			keys.set(i, 0);
+			entries.set(i, 0);
+		}
+	}
+
+	public int getSize() {
+		return entries.length();
+	}
+
+	static long pack(int score, int depth, int bound, int move, int generation) {
+		return VALID | (score & 0xffffL) | ((long) (depth & 0xff) << 16) | ((long) (bound & 0x3) << 24)
+				| ((long) ((move + 1) & 0xff) << 26) | ((long) (generation & 0xff) << 34);
+	}
+
+	public static int score(long entry) {
+		return (short) entry;
+	}
+
+	public static int depth(long entry) {
+		return (int) (entry >>> 16) & 0xff;
+	}
+
+	public static int bound(long entry) {
+		return (int) (entry >>> 24) & 0x3;
+	}
+
+	public static int move(long entry) {
+		return ((int) (entry >>> 26) & 0xff) - 1;
+	}
+
+	static int generation(long entry) {
+		return (int) (entry >>> 34) & 0xff;
+	}
+}
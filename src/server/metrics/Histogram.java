@@ -0,0 +1,94 @@
+package server.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock free histogram with power of two buckets. Recording is a handful of
+ * atomic increments, so it can be used on hot paths from many threads.
+ * Percentiles are approximated by the upper bound of the bucket they fall in.
+ */
+public class Histogram {
+	private static final int BUCKETS = 64;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	private final AtomicLong max = new AtomicLong();
+
+	public void record(long value) {
+		if (value < 0) {
+			value = 0;
+		}
+		buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(value));
+		count.increment();
+		sum.add(value);
+		long current;
+		while (value > (current = max.get())) {
+			if (max.compareAndSet(current, value)) {
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Records the time passed since the given {@link System#nanoTime()} value
+	 *
+	 * @param startNanos
+	 */
+	public void recordSince(long startNanos) {
+		record(System.nanoTime() - startNanos);
+	}
+
+	public long getCount() {
+		return count.sum();
+	}
+
+	public long getMax() {
+		return max.get();
+	}
+
+	public double getMean() {
+		long c = count.sum();
+		return c == 0 ? 0 : (double) sum.sum() / c;
+	}
+
+	/**
+	 * @param p
+	 *            the percentile between 0 and 1
+	 * @return the upper bound of the bucket containing the percentile
+	 */
+	public long getPercentile(double p) {
+		long total = 0;
+		long[] snapshot = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++) {
+			snapshot[i] = buckets.get(i);
+			total += snapshot[i];
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long rank = (long) Math.ceil(p * total);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += snapshot[i];
+			if (seen >= rank) {
+				return i == 0 ? 0 : Math.min((1L << i) - 1, max.get());
+			}
+		}
+		return max.get();
+	}
+
+	/**
+	 * Formats the histogram, dividing all values by the given scale (e.g. 1000
+	 * to print nanoseconds as microseconds)
+	 *
+	 * @param scale
+	 * @return
+	 */
+	public String summary(long scale) {
+		return "count=" + getCount() + " mean=" + String.format("%.1f", getMean() / scale) + " p50="
+				+ getPercentile(0.5) / scale + " p99=" + getPercentile(0.99) / scale + " max=" + getMax() / scale;
+	}
+}
@@ -0,0 +1,58 @@
+package server.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Named counters, gauges and latency histograms of the server. Components
+ * look up their metrics once and keep the reference, so recording does not go
+ * through the maps.
+ */
+public class MetricsRegistry {
+	private final ConcurrentHashMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<String, Histogram> histograms = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+
+	public LongAdder counter(String name) {
+		return counters.computeIfAbsent(name, n -> new LongAdder());
+	}
+
+	/**
+	 * @param name
+	 * @return a histogram of nanosecond values
+	 */
+	public Histogram histogram(String name) {
+		return histograms.computeIfAbsent(name, n -> new Histogram());
+	}
+
+	public void gauge(String name, LongSupplier supplier) {
+		gauges.put(name, supplier);
+	}
+
+	/**
+	 * Builds a human readable report of all metrics, sorted by name.
+	 * Histograms are printed in microseconds.
+	 *
+	 * @return
+	 */
+	public String report() {
+		TreeMap<String, String> lines = new TreeMap<>();
+		for (Map.Entry<String, LongAdder> e : counters.entrySet()) {
+			lines.put(e.getKey(), String.valueOf(e.getValue().sum()));
+		}
+		for (Map.Entry<String, LongSupplier> e : gauges.entrySet()) {
+			lines.put(e.getKey(), String.valueOf(e.getValue().getAsLong()));
+		}
+		for (Map.Entry<String, Histogram> e : histograms.entrySet()) {
+			lines.put(e.getKey(), e.getValue().summary(1000) + " (us)");
+		}
+		StringBuilder report = new StringBuilder();
+		for (Map.Entry<String, String> line : lines.entrySet()) {
+			report.append(line.getKey()).append(": ").append(line.getValue()).append('\n');
+		}
+		return report.toString();
+	}
+}
@@ -1,128 +1,433 @@
 package server.models;
 
-import java.util.ArrayList;
+import java.util.Random;
 
+/**
+ * The board as two bitboards, one per player. Every column uses rows + 1
+ * bits, bit (column * (rows + 1) + row) is the stone in that field. The extra
+ * bit on top of each column stays empty, so shifting a line of stones never
+ * wraps into the next column.
+ *
+ * The bits are spread over as many longs as the board needs, the classic
+ * 7x6 board fits into one. Setting a stone and checking the last stone for a
+ * win touch a constant number of bits and allocate nothing, whatever the size
+ * of the board.
+ *
+ * For the search engine the board also keeps its moves, so they can be taken
+ * back with {@link #undo()}, and a Zobrist hash of the position which is
+ * updated with every move. A second hash of the mirrored position gives a key
+ * which is the same for a position and its mirror image.
+ */
 public class BoardModel {
+	public static final int DEFAULT_COLUMNS = 7;
+	public static final int DEFAULT_ROWS = 6;
+	public static final int DEFAULT_WIN_LENGTH = 4;
 
-	@SuppressWarnings("unchecked")
-	private ArrayList<StoneModel>[] field = new ArrayList[] { new ArrayList<StoneModel>(5),
-			new ArrayList<StoneModel>(5), new ArrayList<StoneModel>(5), new ArrayList<StoneModel>(5),
-			new ArrayList<StoneModel>(5), new ArrayList<StoneModel>(5), new ArrayList<StoneModel>() };
+	public static final int MIN_SIZE = 4;
+	public static final int MAX_SIZE = 16;
+	public static final int MIN_WIN_LENGTH = 3;
+
+	private static final int MAX_BITS = MAX_SIZE * (MAX_SIZE + 1);
+	/**
+	 * One random key per field and player, the same for every board so
+	 * hashes can be compared between boards of the same size
+	 */
+	private static final long[][] ZOBRIST = new long[2][MAX_BITS];
+
+	static {
+		Random random = new Random(0x4C6F6F6BL);
+		for (long[] keys : ZOBRIST) {
+			for (int i = 0; i < keys.length; i++) {
+				keys[i] = random.nextLong();
+			}
+		}
+	}
+
+	private final int columns;
+	private final int rows;
+	private final int winLength;
+	private final int columnBits;
+	private final int totalBits;
+
+	private final long[] player1Stones;
+	private final long[] player2Stones;
+	private final int[] heights;
+	private int moves = 0;
+	private int player1Moves = 0;
 	private int lastSetRow;
+	private boolean lastPlayer1;
+	private final int[] history;
+	private long hash;
+	private long mirrorHash;
 
 	public BoardModel() {
-		lastSetRow = -1;
-		for (ArrayList<StoneModel> listy : field) {
-			for (int i = 0; i < 7; i++) {
-				listy.add(new StoneModel());
-			}
+		this(DEFAULT_COLUMNS, DEFAULT_ROWS, DEFAULT_WIN_LENGTH);
+	}
+
+	/**
+	 * @param columns
+	 * @param rows
+	 * @param winLength
+	 *            the stones in a line needed to win
+	 * @throws IllegalArgumentException
+	 *             see {@link #isValid(int, int, int)}
+	 */
+	public BoardModel(int columns, int rows, int winLength) {
+		if (!isValid(columns, rows, winLength)) {
+			throw new IllegalArgumentException("invalid board " + columns + "x" + rows + ", " + winLength + " in a line");
 		}
+		this.columns = columns;
+		this.rows = rows;
+		this.winLength = winLength;
+		this.columnBits = rows + 1;
+		this.totalBits = columns * columnBits;
+		this.player1Stones = new long[(totalBits + 63) >>> 6];
+		this.player2Stones = new long[player1Stones.length];
+		this.heights = new int[columns];
+		this.history = new int[columns * rows];
+		// boards of different sizes never share a hash
+		this.hash = (columns * 31L + rows) * 31L + winLength;
+		this.mirrorHash = hash;
+		lastSetRow = -1;
+	}
+
+	private BoardModel(BoardModel other) {
+		this.columns = other.columns;
+		this.rows = other.rows;
+		this.winLength = other.winLength;
+		this.columnBits = other.columnBits;
+		this.totalBits = other.totalBits;
+		this.player1Stones = other.player1Stones.clone();
+		this.player2Stones = other.player2Stones.clone();
+		this.heights = other.heights.clone();
+		this.history = other.history.clone();
+		this.moves = other.moves;
+		this.player1Moves = other.player1Moves;
+		this.lastSetRow = other.lastSetRow;
+		this.lastPlayer1 = other.lastPlayer1;
+		this.hash = other.hash;
+		this.mirrorHash = other.mirrorHash;
+	}
+
+	/**
+	 * @return an independent board with the same stones and moves
+	 */
+	public BoardModel copy() {
+		return new BoardModel(this);
+	}
+
+	/**
+	 * @param columns
+	 * @param rows
+	 * @param winLength
+	 * @return whether both sides are between {@link #MIN_SIZE} and
+	 *         {@link #MAX_SIZE} and the line fits onto the board
+	 */
+	public static boolean isValid(int columns, int rows, int winLength) {
+		return columns >= MIN_SIZE && columns <= MAX_SIZE && rows >= MIN_SIZE && rows <= MAX_SIZE
+				&& winLength >= MIN_WIN_LENGTH && winLength <= Math.max(columns, rows);
+	}
+
+	public int getColumns() {
+		return columns;
+	}
+
+	public int getRows() {
+		return rows;
+	}
+
+	public int getWinLength() {
+		return winLength;
 	}
 
 	public void printAllStones() {
-		for (int i = 6; i > 0; i--) {
-			for (ArrayList<StoneModel> listy : field) {
-				System.out.print(listy.get(i).getState() + "|");
+		for (int row = rows - 1; row >= 0; row--) {
+			for (int column = 0; column < columns; column++) {
+				System.out.print(getState(column, row) + "|");
 			}
 			System.out.println("");
 		}
-		for (int i = 0; i < 7; i++) {
+		for (int i = 0; i < columns; i++) {
 			System.out.print("--");
 		}
 		System.out.println("");
 	}
 
+	/**
+	 * @param column
+	 * @param row
+	 *            0 is the bottom row
+	 * @return 0 = not set, 1 = player1, 2 = player2
+	 */
+	public int getState(int column, int row) {
+		int bit = column * columnBits + row;
+		if (isSet(player1Stones, bit)) {
+			return 1;
+		} else if (isSet(player2Stones, bit)) {
+			return 2;
+		}
+		return 0;
+	}
+
+	/**
+	 * Drops a stone into the column
+	 *
+	 * @param player1
+	 * @param row
+	 *            the column
+	 * @return false if the column does not exist or is full
+	 */
 	public boolean setStone(boolean player1, int row) {
-		int emptyField = -1;
-		for (int i = 6; i > 0; i--) {
-			//System.out.println("" + field[row].get(i).getState());
-			if (field[row].get(i).getState().equals("0")) {
-				emptyField = i;
-			}
+		if (row < 0 || row >= columns || heights[row] == rows) {
+			return false;
 		}
-		if (emptyField != -1) {
-			StoneModel sm = new StoneModel();
-			if (player1) {
-				sm.setPlayer1();
-			} else {
-				sm.setPlayer2();
-			}
-			field[row].set(emptyField, sm);
-			lastSetRow = row;
-			return true;
+		int bit = row * columnBits + heights[row];
+		long[] stones = player1 ? player1Stones : player2Stones;
+		stones[bit >>> 6] |= 1L << bit;
+		hash ^= ZOBRIST[player1 ? 0 : 1][bit];
+		mirrorHash ^= ZOBRIST[player1 ? 0 : 1][(columns - 1 - row) * columnBits + heights[row]];
+		heights[row]++;
+		history[moves++] = row;
+		if (player1) {
+			player1Moves++;
+		}
+		lastSetRow = row;
+		lastPlayer1 = player1;
+		return true;
+	}
+
+	/**
+	 * Sets a stone of the player to move, player 1 starts
+	 *
+	 * @param column
+	 * @return false if the column does not exist or is full
+	 */
+	public boolean play(int column) {
+		return setStone(isPlayer1ToMove(), column);
+	}
+
+	/**
+	 * Takes back the last stone
+	 *
+	 * @return false if the board is empty
+	 */
+	public boolean undo() {
+		if (moves == 0) {
+			return false;
+		}
+		int column = history[--moves];
+		int bit = column * columnBits + --heights[column];
+		int mirrorBit = (columns - 1 - column) * columnBits + heights[column];
+		long mask = 1L << bit;
+		if ((player1Stones[bit >>> 6] & mask) != 0) {
+			player1Stones[bit >>> 6] &= ~mask;
+			hash ^= ZOBRIST[0][bit];
+			mirrorHash ^= ZOBRIST[0][mirrorBit];
+			player1Moves--;
+		} else {
+			player2Stones[bit >>> 6] &= ~mask;
+			hash ^= ZOBRIST[1][bit];
+			mirrorHash ^= ZOBRIST[1][mirrorBit];
+		}
+		if (moves == 0) {
+			lastSetRow = -1;
+			lastPlayer1 = false;
 		} else {
+			lastSetRow = history[moves - 1];
+			lastPlayer1 = isSet(player1Stones, lastSetRow * columnBits + heights[lastSetRow] - 1);
+		}
+		return true;
+	}
+
+	/**
+	 * @param column
+	 * @return whether a stone can be dropped into the column
+	 */
+	public boolean canPlay(int column) {
+		return column >= 0 && column < columns && heights[column] < rows;
+	}
+
+	public boolean isPlayer1ToMove() {
+		return moves == 0 || !lastPlayer1;
+	}
+
+	/**
+	 * @return the Zobrist hash of the stones, equal positions on boards of the
+	 *         same size have the same hash
+	 */
+	public long getHash() {
+		return hash;
+	}
+
+	/**
+	 * @return the hash of the position mirrored at the center column
+	 */
+	public long getMirrorHash() {
+		return mirrorHash;
+	}
+
+	/**
+	 * @return the same key for the position and its mirror image, the
+	 *         smaller of both hashes
+	 */
+	public long getCanonicalHash() {
+		return Math.min(hash, mirrorHash);
+	}
+
+	/**
+	 * @return whether {@link #getCanonicalHash()} is the hash of this
+	 *         position and not of its mirror image, moves stored under the
+	 *         canonical key have to be mirrored otherwise
+	 */
+	public boolean isCanonical() {
+		return hash <= mirrorHash;
+	}
+
+	/**
+	 * @param column
+	 * @return the column on the other side of the center
+	 */
+	public int mirrorColumn(int column) {
+		return columns - 1 - column;
+	}
+
+	/**
+	 * @param column
+	 * @return the number of stones in the column
+	 */
+	public int getHeight(int column) {
+		return heights[column];
+	}
+
+	/**
+	 * @param player1
+	 * @return the words of the player's bitboard, not a copy, do not change
+	 */
+	public long[] getStones(boolean player1) {
+		return player1 ? player1Stones : player2Stones;
+	}
+
+	/**
+	 * @return the bits every column uses, rows + 1
+	 */
+	public int getColumnBits() {
+		return columnBits;
+	}
+
+	/**
+	 * Checks only the four lines through the last stone, which is all a move
+	 * can change. Until the player has enough stones for a line there is
+	 * nothing to check.
+	 *
+	 * @return whether the player who set the last stone won with it
+	 */
+	public boolean lastStoneWins() {
+		if (lastSetRow < 0) {
+			return false;
+		}
+		int stonesOfMover = lastPlayer1 ? player1Moves : moves - player1Moves;
+		if (stonesOfMover < winLength) {
 			return false;
 		}
+		long[] stones = lastPlayer1 ? player1Stones : player2Stones;
+		int bit = lastSetRow * columnBits + heights[lastSetRow] - 1;
+		return lineThrough(stones, bit, 1) || lineThrough(stones, bit, columnBits)
+				|| lineThrough(stones, bit, columnBits - 1) || lineThrough(stones, bit, columnBits + 1);
 	}
 
-	public boolean hasWon(boolean player1) {
-		String toCheck = "";
-		if (player1) {
-			toCheck = "1";
-		} else {
-			toCheck = "2";
-		}
-		int rowCounter = 0;
-		for (ArrayList<StoneModel> listy : field) {
-			for (int i = 0; i < 6; i++) {
-				if (listy.get(i).getState().equals(toCheck)) {
-					rowCounter++;
-					if (rowCounter == 4) {
-						return true;
-					}
-				} else {
-					rowCounter = 0;
-				}
-			}
+	/**
+	 * Counts the stones next to the bit in both directions of the line. The
+	 * empty bit on top of every column ends a line at the board edge.
+	 */
+	private boolean lineThrough(long[] stones, int bit, int step) {
+		int count = 1;
+		for (int i = bit + step; count < winLength && i < totalBits && isSet(stones, i); i += step) {
+			count++;
 		}
-		rowCounter = 0;
-		for (int i = 0; i < 6; i++) {
-			for (ArrayList<StoneModel> listy : field) {
-				if (listy.get(i).getState().equals(toCheck)) {
-					rowCounter++;
-					if (rowCounter == 4) {
-						return true;
-					}
-				} else {
-					rowCounter = 0;
-				}
-			}
+		for (int i = bit - step; count < winLength && i >= 0 && isSet(stones, i); i -= step) {
+			count++;
 		}
-		rowCounter = 0;
-		for (int i = 0; i < 4; i++) {
-			for (int j = 0; j < 3; j++) {
-				if (toCheck.equals(field[i].get(j).getState()) && toCheck.equals(field[i + 1].get(j + 1).getState())
-						&& toCheck.equals(field[i + 2].get(j + 2).getState())
-						&& toCheck.equals(field[i + 3].get(j + 3).getState())) {
-					return true;
-				}
+		return count >= winLength;
+	}
+
+	private static boolean isSet(long[] stones, int bit) {
+		return (stones[bit >>> 6] & (1L << bit)) != 0;
+	}
+
+	/**
+	 * @return whether the last stone was set by player 1
+	 */
+	public boolean isLastPlayer1() {
+		return lastPlayer1;
+	}
+
+	/**
+	 * Scans the whole board, see {@link #lastStoneWins()} for the check after
+	 * a move
+	 *
+	 * @param player1
+	 * @return
+	 */
+	public boolean hasWon(boolean player1) {
+		long[] stones = player1 ? player1Stones : player2Stones;
+		// vertical, horizontal and both diagonals
+		return hasLine(stones, 1) || hasLine(stones, columnBits) || hasLine(stones, columnBits - 1)
+				|| hasLine(stones, columnBits + 1);
+	}
+
+	/**
+	 * ANDs the stones with themselves shifted along the line, doubling the
+	 * length of the runs every round. A bit which survives starts a line of
+	 * {@link #winLength} stones.
+	 */
+	private boolean hasLine(long[] stones, int step) {
+		long[] runs = stones.clone();
+		long[] shifted = new long[stones.length];
+		int length = 1;
+		while (length < winLength) {
+			int add = Math.min(length, winLength - length);
+			shiftRight(runs, add * step, shifted);
+			boolean any = false;
+			for (int i = 0; i < runs.length; i++) {
+				runs[i] &= shifted[i];
+				any |= runs[i] != 0;
 			}
-		}
-		for (int i = 0; i < 4; i++) {
-			for (int j = 0; j < 3; j++) {
-				if (toCheck.equals(field[i].get(j+3).getState()) && toCheck.equals(field[i + 1].get(j + 2).getState())
-						&& toCheck.equals(field[i + 2].get(j + 1).getState())
-						&& toCheck.equals(field[i + 3].get(j).getState())) {
-					return true;
-				}
+			if (!any) {
+				return false;
 			}
+			length += add;
+		}
+		return true;
+	}
+
+	private static void shiftRight(long[] source, int bits, long[] target) {
+		int words = bits >>> 6;
+		int shift = bits & 63;
+		for (int i = 0; i < target.length; i++) {
+			int from = i + words;
+			long low = from < source.length ? source[from] >>> shift : 0;
+			long high = shift != 0 && from + 1 < source.length ? source[from + 1] << (64 - shift) : 0;
+			target[i] = low | high;
 		}
-		return false;
 	}
 
 	public int getLastSetRow() {
 		return lastSetRow;
 	}
 
+	/**
+	 * @return the number of stones on the board
+	 */
+	public int getMoveCount() {
+		return moves;
+	}
+
+	/**
+	 * @return whether the board is full. Check for a winner first, the last
+	 *         stone can also win.
+	 */
 	public boolean isTie() {
-		for (int i = 0; i < 6; i++) {
-			for (ArrayList<StoneModel> listy : field) {
-				if ("0".equals(listy.get(i).getState())) {
-					return false;
-				}
-			}
-		}
-		return true;
+		return moves == columns * rows;
 	}
 
 }
@@ -0,0 +1,91 @@
+package server.models;
+
+/**
+ * When bots take the free seat of a waiting game and how much of the machine
+ * they may use. The think threads cap the share of the cores all bots
+ * together take from the human games.
+ */
+public class BotSettings {
+	public static final int DEFAULT_JOIN_TIMEOUT_SECONDS = 30;
+	public static final long DEFAULT_MOVE_BUDGET_MILLIS = 500;
+	/**
+	 * A quarter of the cores
+	 */
+	public static final int DEFAULT_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() / 4);
+	public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+	public static final int DEFAULT_TABLE_MEGABYTES = 16;
+
+	private int joinTimeoutSeconds = DEFAULT_JOIN_TIMEOUT_SECONDS;
+	private long moveBudgetMillis = DEFAULT_MOVE_BUDGET_MILLIS;
+	private int threads = DEFAULT_THREADS;
+	private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+	private int tableMegabytes = DEFAULT_TABLE_MEGABYTES;
+	private boolean monteCarlo = false;
+
+	/**
+	 * @return how long a player waits alone in a game before a bot joins, 0
+	 *         if bots never join
+	 */
+	public int getJoinTimeoutSeconds() {
+		return joinTimeoutSeconds;
+	}
+
+	public void setJoinTimeoutSeconds(int joinTimeoutSeconds) {
+		this.joinTimeoutSeconds = joinTimeoutSeconds;
+	}
+
+	/**
+	 * @return the time from the move of the opponent to the answer of the
+	 *         bot, waiting for a think thread included
+	 */
+	public long getMoveBudgetMillis() {
+		return moveBudgetMillis;
+	}
+
+	public void setMoveBudgetMillis(long moveBudgetMillis) {
+		this.moveBudgetMillis = moveBudgetMillis;
+	}
+
+	/**
+	 * @return the threads all bots think on
+	 */
+	public int getThreads() {
+		return threads;
+	}
+
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+
+	/**
+	 * @return the moves waiting for a think thread, beyond that bots play
+	 *         the free column nearest to the center
+	 */
+	public int getQueueCapacity() {
+		return queueCapacity;
+	}
+
+	public void setQueueCapacity(int queueCapacity) {
+		this.queueCapacity = queueCapacity;
+	}
+
+	public int getTableMegabytes() {
+		return tableMegabytes;
+	}
+
+	public void setTableMegabytes(int tableMegabytes) {
+		this.tableMegabytes = tableMegabytes;
+	}
+
+	/**
+	 * @return whether bots play with the Monte Carlo tree search instead of
+	 *         alpha-beta and the opening book, weaker at the same budget
+	 */
+	public boolean isMonteCarlo() {
+		return monteCarlo;
+	}
+
+	public void setMonteCarlo(boolean monteCarlo) {
+		this.monteCarlo = monteCarlo;
+	}
+}
@@ -0,0 +1,45 @@
+package server.models;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import server.controllers.PlayerController;
+
+/**
+ * A named chat channel. Members can join and leave from any thread while a
+ * message is fanned out to them. The last messages are kept for players
+ * which join later.
+ */
+public class ChatChannel {
+	private final String name;
+	private final Set<PlayerController> members = ConcurrentHashMap.newKeySet();
+	private final ChatHistory history;
+
+	public ChatChannel(String name, int historyCapacity) {
+		this.name = name;
+		this.history = new ChatHistory(historyCapacity);
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return a weakly consistent view of the members
+	 */
+	public Set<PlayerController> getMembers() {
+		return members;
+	}
+
+	public ChatHistory getHistory() {
+		return history;
+	}
+
+	public boolean isMember(PlayerController player) {
+		return members.contains(player);
+	}
+
+	public int size() {
+		return members.size();
+	}
+}
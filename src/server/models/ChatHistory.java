@@ -0,0 +1,98 @@
+package server.models;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The last messages of a chat channel in a fixed ring. Appending never locks;
+ * the oldest entry is overwritten once the ring is full.
+ *
+ * Every slot holds the entry together with its sequence number as one
+ * immutable pair. A writer only replaces an older pair, so a writer which was
+ * overtaken by one a full ring later cannot roll the slot back, and a reader
+ * never sees an entry under the sequence number of another one.
+ */
+public class ChatHistory {
+	public static final int DEFAULT_CAPACITY = 50;
+	/**
+	 * Longer entries are not kept, so a channel never holds more than
+	 * capacity * MAX_ENTRY_LENGTH characters
+	 */
+	public static final int MAX_ENTRY_LENGTH = 512;
+
+	private static final class Entry {
+		private final long sequence;
+		private final String text;
+
+		private Entry(long sequence, String text) {
+			this.sequence = sequence;
+			this.text = text;
+		}
+	}
+
+	private final AtomicReferenceArray<Entry> entries;
+	private final AtomicLong next = new AtomicLong();
+	private final int capacity;
+
+	public ChatHistory(int capacity) {
+		this.capacity = Math.max(0, capacity);
+		this.entries = new AtomicReferenceArray<>(this.capacity);
+	}
+
+	/**
+	 * @param entry
+	 * @return false if the entry is too long or the history is disabled
+	 */
+	public boolean append(String entry) {
+		if (capacity == 0 || entry.length() > MAX_ENTRY_LENGTH) {
+			return false;
+		}
+		long sequence = next.getAndIncrement();
+		int slot = (int) (sequence % capacity);
+		Entry written = new Entry(sequence, entry);
+		while (true) {
+			Entry current = entries.get(slot);
+			if (current != null && current.sequence > sequence) {
+				// a newer entry already took the slot, this one is gone
+				return true;
+			}
+			if (entries.compareAndSet(slot, current, written)) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Appends the entries, oldest first, each preceded by the separator
+	 *
+	 * @param target
+	 * @param separator
+	 * @return the number of entries written
+	 */
+	public int appendTo(StringBuilder target, char separator) {
+		long end = next.get();
+		long start = Math.max(0, end - capacity);
+		int written = 0;
+		for (long sequence = start; sequence < end; sequence++) {
+			Entry entry = entries.get((int) (sequence % capacity));
+			if (entry == null || entry.sequence != sequence) {
+				// not written yet or already overwritten
+				continue;
+			}
+			target.append(separator).append(entry.text);
+			written++;
+		}
+		return written;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * @return the number of entries ever appended
+	 */
+	public long getTotal() {
+		return next.get();
+	}
+}
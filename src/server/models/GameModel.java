@@ -1,13 +1,30 @@
 package server.models;
 
+import java.util.concurrent.atomic.AtomicReference;
+
 import server.com.CommunicationTask;
 import server.controllers.LogController;
 import server.controllers.PlayerController;
 
 public class GameModel {
+	/**
+	 * Both seats of a game. Seats are only changed by swapping the whole pair,
+	 * so two players can never claim the same seat.
+	 */
+	private static final class Seats {
+		private static final Seats EMPTY = new Seats(null, null);
+
+		private final PlayerController one;
+		private final PlayerController two;
+
+		private Seats(PlayerController one, PlayerController two) {
+			this.one = one;
+			this.two = two;
+		}
+	}
+
 	private String name;
-	private PlayerController playerOne = null;
-	private PlayerController playerTwo = null;
+	private final AtomicReference<Seats> seats = new AtomicReference<>(Seats.EMPTY);
 	private BoardModel board;
 	private boolean playerFlag = false; //TRUE = 1, FALSE = 2, START as FALSE because setStone()
 	private boolean finished = false;
@@ -15,15 +32,34 @@ public class GameModel {
 	private LogController logger;
 
 	public GameModel(String name, LogController logger) {
+		this(name, logger, new BoardModel());
+	}
+
+	public GameModel(String name, LogController logger, BoardModel board) {
 		this.name = name;
-		this.board = new BoardModel();
+		this.board = board;
 		this.logger = logger;
 	}
 
-	public boolean setStone(int row) {
-		playerFlag = !playerFlag;
-		logger.log("GameModel from "+ (playerFlag?playerOne.getModel().getName():playerTwo.getModel().getName()), "setting Stone at row "+row, null, playerFlag?"true":"false");
-		return board.setStone(playerFlag, row);
+	/**
+	 * Sets a stone of the player whose turn it is. The turn only passes to the
+	 * other player if the move was valid.
+	 *
+	 * @param player
+	 * @param row
+	 * @return false if it is not the turn of the player or the move is invalid
+	 */
+	public boolean setStone(PlayerController player, int row) {
+		boolean mover = !playerFlag;
+		if (player != (mover ? getPlayerOne() : getPlayerTwo()) || finished || row < 0 || row >= board.getColumns()) {
+			return false;
+		}
+		logger.log("GameModel from "+ player.getModel().getName(), "setting Stone at row "+row, null, mover?"true":"false");
+		if (!board.setStone(mover, row)) {
+			return false;
+		}
+		playerFlag = mover;
+		return true;
 	}
 
 	public String getName() {
@@ -39,19 +75,70 @@ public class GameModel {
 	}
 
 	public PlayerController getPlayerOne() {
-		return playerOne;
+		return seats.get().one;
 	}
 
-	public void setPlayerOne(PlayerController playerOne) {
-		this.playerOne = playerOne;
+	public PlayerController getPlayerTwo() {
+		return seats.get().two;
 	}
 
-	public PlayerController getPlayerTwo() {
-		return playerTwo;
+	/**
+	 * Atomically takes the first free seat
+	 *
+	 * @param player
+	 * @return 1 or 2 for the claimed seat, -1 if the game is full
+	 */
+	public int claimSeat(PlayerController player) {
+		while (true) {
+			Seats current = seats.get();
+			Seats next;
+			int seat;
+			if (current.one == null) {
+				next = new Seats(player, current.two);
+				seat = 1;
+			} else if (current.two == null && current.one != player) {
+				next = new Seats(current.one, player);
+				seat = 2;
+			} else {
+				return -1;
+			}
+			if (seats.compareAndSet(current, next)) {
+				return seat;
+			}
+		}
+	}
+
+	/**
+	 * Frees the first seat if the player is still waiting alone in the game
+	 *
+	 * @param player
+	 * @return whether the seat was freed
+	 */
+	public boolean releaseSeatOne(PlayerController player) {
+		Seats current = seats.get();
+		return current.one == player && current.two == null && seats.compareAndSet(current, Seats.EMPTY);
+	}
+
+	/**
+	 * Atomically takes the second seat, but only opposite the given player
+	 *
+	 * @param opponent
+	 *            who has to sit on the first seat
+	 * @param player
+	 * @return whether the seat was taken
+	 */
+	public boolean claimSeatTwo(PlayerController opponent, PlayerController player) {
+		Seats current = seats.get();
+		return current.one == opponent && current.two == null
+				&& seats.compareAndSet(current, new Seats(opponent, player));
+	}
+
+	public void releaseSeats() {
+		seats.set(Seats.EMPTY);
 	}
 
-	public void setPlayerTwo(PlayerController playerTwo) {
-		this.playerTwo = playerTwo;
+	public boolean isFull() {
+		return seats.get().two != null;
 	}
 
 	public CommunicationTask getFirstSet() {
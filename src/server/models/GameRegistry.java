@@ -0,0 +1,77 @@
+package server.models;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+
+import server.controllers.GameController;
+import server.controllers.GameExecutor;
+import server.controllers.LogController;
+
+/**
+ * All running games, keyed by name. Lookups are O(1), creating a game is
+ * atomic and iterating never blocks the player threads.
+ */
+public class GameRegistry {
+	private final ConcurrentHashMap<String, GameController> games = new ConcurrentHashMap<>();
+	private final GameExecutor executor;
+
+	/**
+	 * @param executor
+	 *            runs the games of this registry
+	 */
+	public GameRegistry(GameExecutor executor) {
+		this.executor = executor;
+	}
+
+	/**
+	 * Creates a game unless one with the same name exists
+	 *
+	 * @param name
+	 * @param logger
+	 * @return the new game or null if the name is taken
+	 */
+	public GameController create(String name, LogController logger) {
+		return create(name, logger, new BoardModel());
+	}
+
+	/**
+	 * Creates a game on the given board unless one with the same name exists
+	 *
+	 * @param name
+	 * @param logger
+	 * @param board
+	 * @return the new game or null if the name is taken
+	 */
+	public GameController create(String name, LogController logger, BoardModel board) {
+		GameController game = new GameController(name, logger, executor, board);
+		if (games.putIfAbsent(name, game) != null) {
+			return null;
+		}
+		return game;
+	}
+
+	public GameController get(String name) {
+		return games.get(name);
+	}
+
+	/**
+	 * Removes the game if it is still registered under its name
+	 *
+	 * @param game
+	 * @return whether the game was removed
+	 */
+	public boolean remove(GameController game) {
+		return games.remove(game.getGame().getName(), game);
+	}
+
+	/**
+	 * @return a weakly consistent view of all games
+	 */
+	public Collection<GameController> values() {
+		return games.values();
+	}
+
+	public int size() {
+		return games.size();
+	}
+}
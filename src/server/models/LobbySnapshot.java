@@ -0,0 +1,116 @@
+package server.models;
+
+import java.util.Arrays;
+
+/**
+ * An immutable, versioned list of the joinable games, sorted by name. Every
+ * change creates a new snapshot with the next version, so readers never lock
+ * and the encoded list is built at most once per version.
+ */
+public final class LobbySnapshot {
+	public static final LobbySnapshot EMPTY = new LobbySnapshot(0, new String[0]);
+
+	private final long version;
+	private final String[] names;
+	private volatile String encoded;
+
+	private LobbySnapshot(long version, String[] names) {
+		this.version = version;
+		this.names = names;
+	}
+
+	public LobbySnapshot withGame(String name) {
+		int index = Arrays.binarySearch(names, name);
+		if (index >= 0) {
+			return this;
+		}
+		int insert = -index - 1;
+		String[] next = new String[names.length + 1];
+		System.arraycopy(names, 0, next, 0, insert);
+		next[insert] = name;
+		System.arraycopy(names, insert, next, insert + 1, names.length - insert);
+		return new LobbySnapshot(version + 1, next);
+	}
+
+	public LobbySnapshot withoutGame(String name) {
+		int index = Arrays.binarySearch(names, name);
+		if (index < 0) {
+			return this;
+		}
+		String[] next = new String[names.length - 1];
+		System.arraycopy(names, 0, next, 0, index);
+		System.arraycopy(names, index + 1, next, index, names.length - index - 1);
+		return new LobbySnapshot(version + 1, next);
+	}
+
+	/**
+	 * @return all games, comma separated. Built once per snapshot.
+	 */
+	public String encode() {
+		String result = encoded;
+		if (result == null) {
+			result = encode(0, names.length, 0, Integer.MAX_VALUE);
+			encoded = result;
+		}
+		return result;
+	}
+
+	/**
+	 * Encodes a page of the games starting with the given prefix
+	 *
+	 * @param prefix
+	 *            the name prefix or null for all games
+	 * @param offset
+	 * @param limit
+	 * @return the comma separated names
+	 */
+	public String encode(String prefix, int offset, int limit) {
+		if ((prefix == null || prefix.isEmpty()) && offset == 0 && limit >= names.length) {
+			return encode();
+		}
+		int[] range = range(prefix);
+		return encode(range[0], range[1], offset, limit);
+	}
+
+	/**
+	 * @param prefix
+	 * @return the number of games starting with the prefix
+	 */
+	public int count(String prefix) {
+		int[] range = range(prefix);
+		return range[1] - range[0];
+	}
+
+	private int[] range(String prefix) {
+		if (prefix == null || prefix.isEmpty()) {
+			return new int[] { 0, names.length };
+		}
+		int from = Arrays.binarySearch(names, prefix);
+		if (from < 0) {
+			from = -from - 1;
+		}
+		int to = from;
+		while (to < names.length && names[to].startsWith(prefix)) {
+			to++;
+		}
+		return new int[] { from, to };
+	}
+
+	private String encode(int from, int to, int offset, int limit) {
+		StringBuilder builder = new StringBuilder();
+		int start = from + Math.max(0, offset);
+		int end = (int) Math.min(to, (long) start + limit);
+		for (int i = start; i < end; i++) {
+			builder.append(names[i]).append(',');
+		}
+		return builder.toString();
+	}
+
+	public long getVersion() {
+		return version;
+	}
+
+	public int size() {
+		return names.length;
+	}
+}
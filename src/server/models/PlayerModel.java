@@ -3,10 +3,13 @@ package server.models;
 import java.io.BufferedReader;
 import java.io.PrintStream;
 import java.net.Socket;
+import java.util.function.Function;
 
 import server.com.Communicator;
+import server.com.OutboundLimits;
 import server.controllers.GameController;
 import server.controllers.LogController;
+import server.metrics.MetricsRegistry;
 
 public class PlayerModel {
 	private String name;
@@ -20,14 +23,34 @@ public class PlayerModel {
 	private boolean inGame = false;
 	private boolean playing = false;
 
+	private Runnable stateListener;
+
 	private Communicator communicator;
 	private GameController game;
 	private LogController logger;
 
 	public PlayerModel(LogController logger){
+		this(logger, new MetricsRegistry());
+	}
+
+	public PlayerModel(LogController logger, MetricsRegistry metrics){
+		this(logger, metrics, new OutboundLimits());
+	}
+
+	public PlayerModel(LogController logger, MetricsRegistry metrics, OutboundLimits limits){
+		this(logger, player -> new Communicator(logger, player, metrics, limits));
+	}
+
+	/**
+	 * @param logger
+	 * @param communicator
+	 *            creates the communicator of the player, e.g. one which does
+	 *            not send to a socket
+	 */
+	public PlayerModel(LogController logger, Function<PlayerModel, Communicator> communicator){
 		this.logger = logger;
 		this.playerSocket = new Socket();
-		this.communicator = new Communicator(logger, this);
+		this.communicator = communicator.apply(this);
 	}
 
 	public String getName() {
@@ -75,7 +98,11 @@ public class PlayerModel {
 	}
 
 	public void setConnected(boolean connected) {
+		boolean changed = this.connected != connected;
 		this.connected = connected;
+		if (changed) {
+			stateChanged();
+		}
 	}
 
 	public boolean isInGame() {
@@ -83,7 +110,11 @@ public class PlayerModel {
 	}
 
 	public void setInGame(boolean inGame) {
+		boolean changed = this.inGame != inGame;
 		this.inGame = inGame;
+		if (changed) {
+			stateChanged();
+		}
 	}
 
 	public boolean isPlaying() {
@@ -91,7 +122,41 @@ public class PlayerModel {
 	}
 
 	public void setPlaying(boolean playing) {
+		boolean changed = this.playing != playing;
 		this.playing = playing;
+		if (changed) {
+			stateChanged();
+		}
+	}
+
+	/**
+	 * @return the protocol state or null if the player is not connected
+	 */
+	public PlayerState getState() {
+		if (!connected) {
+			return null;
+		} else if (playing) {
+			return PlayerState.PLAYING;
+		} else if (inGame) {
+			return PlayerState.WAITING;
+		}
+		return PlayerState.LOBBY;
+	}
+
+	/**
+	 * Registers a listener that is run whenever connected, inGame or playing
+	 * changes
+	 *
+	 * @param stateListener
+	 */
+	public void setStateListener(Runnable stateListener) {
+		this.stateListener = stateListener;
+	}
+
+	private void stateChanged() {
+		if (stateListener != null) {
+			stateListener.run();
+		}
 	}
 
 	public Communicator getCommunicator() {
@@ -0,0 +1,11 @@
+package server.models;
+
+/**
+ * The protocol state of a connected player. Decides which commands are
+ * accepted.
+ */
+public enum PlayerState {
+	LOBBY, // connected, not in a game
+	WAITING, // in a game, waiting for an opponent
+	PLAYING; // in a game with two players
+}
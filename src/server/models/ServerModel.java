@@ -2,26 +2,53 @@ package server.models;
 
 import java.io.IOException;
 import java.net.ServerSocket;
-import java.util.ArrayList;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
 
-import server.controllers.GameController;
+import server.com.OutboundLimits;
+import server.controllers.GameExecutor;
 import server.controllers.LogController;
 import server.controllers.PlayerController;
+import server.engine.OpeningBook;
+import server.metrics.MetricsRegistry;
 
 public class ServerModel {
-	private ArrayList<PlayerController> players;
-	private ArrayList<GameController> games;
+	private Set<PlayerController> players;
+	private Set<PlayerController> lobbyPlayers;
+	private GameRegistry games;
+	private AtomicReference<LobbySnapshot> lobby = new AtomicReference<>(LobbySnapshot.EMPTY);
 	private int portNumber;
 	private int maxSockets;
 
 	private LogController logger;
+	private MetricsRegistry metrics;
+	private OutboundLimits outboundLimits = new OutboundLimits();
 	private ServerSocket socket;
+	private volatile OpeningBook openingBook;
+
+	public static final int DEFAULT_PORT = 4560;
 
 	public ServerModel(boolean logging){
+		this(logging, DEFAULT_PORT);
+	}
+
+	/**
+	 * @param logging
+	 * @param portNumber
+	 *            the port to listen on, 0 for any free port
+	 */
+	public ServerModel(boolean logging, int portNumber){
 		logger = new LogController(logging);
-		players = new ArrayList<>();
-		games = new ArrayList<>();
-		portNumber = 4560;
+		metrics = new MetricsRegistry();
+		metrics.gauge("players.registered", () -> players.size());
+		metrics.gauge("players.lobby", () -> lobbyPlayers.size());
+		metrics.gauge("engine.book.positions", () -> openingBook == null ? 0 : openingBook.size());
+		players = ConcurrentHashMap.newKeySet();
+		lobbyPlayers = ConcurrentHashMap.newKeySet();
+		games = new GameRegistry(new GameExecutor(metrics));
+		this.portNumber = portNumber;
 		try {
 			socket = new ServerSocket(portNumber);
 		} catch (IOException e) {
@@ -30,29 +57,49 @@ public class ServerModel {
 	}
 
 	public String getAllGames() {
-		String output = "success:requested:";
+		return "success:requested:" + lobby.get().encode();
+	}
 
-		for (GameController g : games) {
-			output += g.getGame().getName() + ",";
-		}
+	/**
+	 * @return the current list of joinable games
+	 */
+	public LobbySnapshot getLobbySnapshot() {
+		return lobby.get();
+	}
 
-		return output;
+	/**
+	 * Adds a joinable game to the lobby snapshot
+	 *
+	 * @param name
+	 * @return the version of the snapshot with the game
+	 */
+	public long openLobbyGame(String name) {
+		return lobby.updateAndGet(snapshot -> snapshot.withGame(name)).getVersion();
 	}
 
-	public ArrayList<PlayerController> getPlayers() {
-		return players;
+	/**
+	 * Removes a game which is full or gone from the lobby snapshot
+	 *
+	 * @param name
+	 * @return the version of the snapshot without the game
+	 */
+	public long closeLobbyGame(String name) {
+		return lobby.updateAndGet(snapshot -> snapshot.withoutGame(name)).getVersion();
 	}
 
-	public void setPlayers(ArrayList<PlayerController> players) {
-		this.players = players;
+	public Set<PlayerController> getPlayers() {
+		return players;
 	}
 
-	public ArrayList<GameController> getGames() {
-		return games;
+	/**
+	 * @return the presence index: all connected players in the lobby
+	 */
+	public Set<PlayerController> getLobbyPlayers() {
+		return lobbyPlayers;
 	}
 
-	public void setGames(ArrayList<GameController> games) {
-		this.games = games;
+	public GameRegistry getGames() {
+		return games;
 	}
 
 	public int getPortNumber() {
@@ -82,4 +129,45 @@ public class ServerModel {
 	public LogController getLogger() {
 		return logger;
 	}
+
+	public MetricsRegistry getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * @return the budget of every new connection
+	 */
+	public OutboundLimits getOutboundLimits() {
+		return outboundLimits;
+	}
+
+	public void setOutboundLimits(OutboundLimits outboundLimits) {
+		this.outboundLimits = outboundLimits;
+	}
+
+	/**
+	 * Memory-maps the opening book of the engine, see
+	 * {@link server.engine.OpeningBookBuilder}
+	 *
+	 * @param file
+	 * @return false if the file is missing or not an opening book
+	 */
+	public boolean loadOpeningBook(Path file) {
+		try {
+			openingBook = OpeningBook.open(file);
+			logger.log("Server", "opening book loaded", null, openingBook.size() + " positions of "
+					+ openingBook.getColumns() + "x" + openingBook.getRows() + ", up to " + openingBook.getPlies() + " stones");
+			return true;
+		} catch (IOException e) {
+			logger.log("Server", "no opening book", null, e.getMessage());
+			return false;
+		}
+	}
+
+	/**
+	 * @return the opening book or null if none was loaded
+	 */
+	public OpeningBook getOpeningBook() {
+		return openingBook;
+	}
 }
@@ -0,0 +1,153 @@
+package server.test;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import server.models.BoardModel;
+
+/**
+ * Plays random games and compares the incremental win check with the full
+ * board scan and with a plain grid scan
+ */
+public class BoardModelTest {
+	private static final int GAMES = 20000;
+
+	@org.junit.Test
+	public void testLastStoneWinsMatchesFullScan() {
+		playRandomGames(BoardModel.DEFAULT_COLUMNS, BoardModel.DEFAULT_ROWS, BoardModel.DEFAULT_WIN_LENGTH, GAMES);
+	}
+
+	@org.junit.Test
+	public void testOtherSizesMatchFullScan() {
+		// more than 64 bits, a column on a word boundary and long lines
+		playRandomGames(9, 7, 5, GAMES / 4);
+		playRandomGames(10, 10, 5, GAMES / 4);
+		playRandomGames(16, 16, 6, GAMES / 20);
+		playRandomGames(4, 5, 3, GAMES / 4);
+	}
+
+	private void playRandomGames(int columns, int rows, int winLength, int games) {
+		Random random = new Random(42);
+		int wins = 0;
+		for (int n = 0; n < games; n++) {
+			BoardModel board = new BoardModel(columns, rows, winLength);
+			int[][] grid = new int[columns][rows];
+			int[] heights = new int[columns];
+			boolean player1 = random.nextBoolean();
+			while (!board.isTie()) {
+				int column = random.nextInt(columns);
+				if (!board.setStone(player1, column)) {
+					assertEquals(rows, heights[column]);
+					continue;
+				}
+				grid[column][heights[column]++] = player1 ? 1 : 2;
+				boolean expected = hasLine(grid, player1 ? 1 : 2, winLength);
+				assertEquals(expected, board.hasWon(player1));
+				assertEquals(expected, board.lastStoneWins());
+				if (expected) {
+					wins++;
+					break;
+				}
+				player1 = !player1;
+			}
+		}
+		assertTrue(wins > 0);
+	}
+
+	@org.junit.Test
+	public void testFastPathBeforeFourStones() {
+		BoardModel board = new BoardModel();
+		for (int i = 0; i < 3; i++) {
+			board.setStone(true, 0);
+			assertFalse(board.lastStoneWins());
+		}
+		board.setStone(true, 0);
+		assertTrue(board.lastStoneWins());
+	}
+
+	@org.junit.Test
+	public void testFullColumnAndTie() {
+		BoardModel board = new BoardModel();
+		assertFalse(board.setStone(true, -1));
+		assertFalse(board.setStone(true, BoardModel.DEFAULT_COLUMNS));
+		// pairs of stones in every column, the middle column inverted: a full
+		// board without four in a line
+		for (int column = 0; column < BoardModel.DEFAULT_COLUMNS; column++) {
+			for (int row = 0; row < BoardModel.DEFAULT_ROWS; row++) {
+				boolean player1 = ((row / 2) + (column == 3 ? 1 : 0)) % 2 == 0;
+				assertTrue(board.setStone(player1, column));
+			}
+			assertFalse(board.setStone(true, column));
+		}
+		assertTrue(board.isTie());
+		assertFalse(board.hasWon(true));
+		assertFalse(board.hasWon(false));
+	}
+
+	@org.junit.Test
+	public void testUndoRestoresBoardAndHash() {
+		Random random = new Random(3);
+		BoardModel board = new BoardModel(9, 7, 5);
+		long empty = board.getHash();
+		int played = 0;
+		while (!board.isTie()) {
+			int column = random.nextInt(board.getColumns());
+			if (board.play(column)) {
+				played++;
+				BoardModel copy = board.copy();
+				assertTrue(copy.undo());
+				assertTrue(copy.play(column));
+				assertEquals(board.getHash(), copy.getHash());
+				assertEquals(board.isLastPlayer1(), copy.isLastPlayer1());
+				assertEquals(board.lastStoneWins(), copy.lastStoneWins());
+			}
+		}
+		assertEquals(63, played);
+		while (board.undo()) {
+			played--;
+		}
+		assertEquals(0, played);
+		assertEquals(empty, board.getHash());
+		assertTrue(board.isPlayer1ToMove());
+		assertEquals(-1, board.getLastSetRow());
+	}
+
+	@org.junit.Test
+	public void testInvalidSizes() {
+		assertFalse(BoardModel.isValid(3, 6, 3));
+		assertFalse(BoardModel.isValid(7, BoardModel.MAX_SIZE + 1, 4));
+		assertFalse(BoardModel.isValid(7, 6, 2));
+		assertFalse(BoardModel.isValid(7, 6, 8));
+		assertTrue(BoardModel.isValid(7, 6, 7));
+		try {
+			new BoardModel(7, 6, 8);
+			fail("8 in a line does not fit onto 7x6");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	private static boolean hasLine(int[][] grid, int player, int winLength) {
+		int[][] directions = { { 1, 0 }, { 0, 1 }, { 1, 1 }, { 1, -1 } };
+		for (int column = 0; column < grid.length; column++) {
+			for (int row = 0; row < grid[column].length; row++) {
+				for (int[] d : directions) {
+					int k = 0;
+					while (k < winLength) {
+						int c = column + d[0] * k;
+						int r = row + d[1] * k;
+						if (c < 0 || c >= grid.length || r < 0 || r >= grid[c].length || grid[c][r] != player) {
+							break;
+						}
+						k++;
+					}
+					if (k == winLength) {
+						return true;
+					}
+				}
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,123 @@
+package server.test;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.Before;
+
+import server.controllers.GameController;
+import server.controllers.PlayerController;
+import server.controllers.ServerController;
+
+/**
+ * Stress tests for creating and joining games from many threads at once
+ */
+public class GameRegistryTest {
+	private static final int GAMES = 10000;
+	private static final int THREADS = 8;
+
+	private ServerController server;
+
+	@Before
+	public void setUp() throws Exception {
+		server = new ServerController(false, 0);
+	}
+
+	@org.junit.Test
+	public void testConcurrentCreate() throws Exception {
+		AtomicInteger created = new AtomicInteger();
+		runConcurrently(t -> {
+			for (int i = 0; i < GAMES; i++) {
+				int game = (i + t * (GAMES / THREADS)) % GAMES;
+				if (server.createGame("game" + game)) {
+					created.incrementAndGet();
+				}
+			}
+		});
+		assertEquals(GAMES, created.get());
+		assertEquals(GAMES, server.getModel().getGames().size());
+		assertEquals(GAMES, server.getModel().getLobbySnapshot().size());
+	}
+
+	@org.junit.Test
+	public void testConcurrentJoin() throws Exception {
+		for (int i = 0; i < GAMES; i++) {
+			assertTrue(server.createGame("game" + i));
+		}
+		ArrayList<PlayerController> players = new ArrayList<>();
+		for (int i = 0; i < THREADS; i++) {
+			players.add(new PlayerController(server, server.getModel().getLogger()));
+		}
+		AtomicIntegerArray seats = new AtomicIntegerArray(GAMES);
+		runConcurrently(t -> {
+			for (int i = 0; i < GAMES; i++) {
+				if (server.joinGame("game" + i, players.get(t)) != -1) {
+					seats.incrementAndGet(i);
+				}
+			}
+		});
+		for (int i = 0; i < GAMES; i++) {
+			GameController game = server.getModel().getGames().get("game" + i);
+			assertEquals("seats of game" + i, 2, seats.get(i));
+			assertNotNull(game.getGame().getPlayerOne());
+			assertNotNull(game.getGame().getPlayerTwo());
+			assertTrue(game.getGame().getPlayerOne() != game.getGame().getPlayerTwo());
+		}
+		assertEquals(0, server.getModel().getLobbySnapshot().size());
+	}
+
+	@org.junit.Test
+	public void testJoinAgainstOnlyTakesSeatTwo() throws Exception {
+		assertTrue(server.createGame("game"));
+		GameController game = server.getModel().getGames().get("game");
+		PlayerController waiting = new PlayerController(server, server.getModel().getLogger());
+		PlayerController other = new PlayerController(server, server.getModel().getLogger());
+		PlayerController bot = new PlayerController(server, server.getModel().getLogger());
+		assertEquals(1, server.joinGame(game, waiting));
+		assertTrue(game.getGame().releaseSeatOne(waiting));
+		// the waiting player left, the seat must stay free for the next player
+		assertFalse(server.joinGameAgainst(game, waiting, bot));
+		assertNull(game.getGame().getPlayerOne());
+		assertEquals(1, server.joinGame(game, other));
+		assertFalse(server.joinGameAgainst(game, waiting, bot));
+		assertTrue(server.joinGameAgainst(game, other, bot));
+		assertTrue(game.getGame().getPlayerTwo() == bot);
+		assertFalse(game.canJoin());
+	}
+
+	private interface Worker {
+		public void run(int thread) throws Exception;
+	}
+
+	private void runConcurrently(Worker worker) throws Exception {
+		CountDownLatch start = new CountDownLatch(1);
+		ArrayList<Thread> threads = new ArrayList<>();
+		ArrayList<Throwable> errors = new ArrayList<>();
+		for (int t = 0; t < THREADS; t++) {
+			final int thread = t;
+			Thread th = new Thread(() -> {
+				try {
+					start.await();
+					worker.run(thread);
+				} catch (Throwable e) {
+					synchronized (errors) {
+						errors.add(e);
+					}
+				}
+			});
+			threads.add(th);
+			th.start();
+		}
+		start.countDown();
+		for (Thread th : threads) {
+			th.join();
+		}
+		if (!errors.isEmpty()) {
+			throw new AssertionError(errors.get(0));
+		}
+	}
+}
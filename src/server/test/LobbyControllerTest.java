@@ -0,0 +1,140 @@
+package server.test;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.LockSupport;
+
+import org.junit.Before;
+
+import crypto.CryptoEngine;
+import crypto.CryptoEngineEnvType;
+import server.com.CommunicationTask;
+import server.controllers.LobbyController;
+import server.controllers.PlayerController;
+import server.controllers.ServerController;
+import server.models.LobbySnapshot;
+
+/**
+ * Records lobby changes from many threads while they are flushed and checks
+ * that a client which skips pushes it already has ends with the right list
+ */
+public class LobbyControllerTest {
+	private static final int GAMES = 300;
+	private static final int THREADS = 4;
+
+	private ServerController server;
+	private LobbyController lobby;
+	private PlayerController subscriber;
+
+	@Before
+	public void setUp() throws Exception {
+		server = new ServerController(false, 0);
+		// no window, every change races with a flush
+		lobby = new LobbyController(server.getModel(), 0);
+		subscriber = new PlayerController(server, server.getModel().getLogger());
+		subscriber.getModel().setConnected(true);
+		// the key exchange of a client, pushes are encrypted
+		CryptoEngine client = new CryptoEngine(CryptoEngineEnvType.server);
+		byte[] key = client.generateRandomAESKey();
+		subscriber.getCom().setCryptoKey(client.rsaEncrypt(key, client.getKeyPair().getPublic()));
+		lobby.subscribe(subscriber);
+	}
+
+	@org.junit.Test
+	public void testRecordDuringFlush() throws Exception {
+		CountDownLatch start = new CountDownLatch(1);
+		CountDownLatch done = new CountDownLatch(THREADS);
+		for (int t = 0; t < THREADS; t++) {
+			final int thread = t;
+			new Thread(() -> {
+				try {
+					start.await();
+					for (int i = 0; i < GAMES; i++) {
+						String name = "g" + thread + "_" + i;
+						lobby.gameCreated(name);
+						if (i % 3 == 1) {
+							lobby.gameFilled(name);
+						} else if (i % 3 == 2) {
+							lobby.gameRemoved(name);
+						}
+						// lets the flusher run between the changes
+						LockSupport.parkNanos(500000);
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} finally {
+					done.countDown();
+				}
+			}).start();
+		}
+		Client fromStart = new Client(LobbySnapshot.EMPTY);
+		Client loadedLater = null;
+		long lastVersion = -1;
+		int pushes = 0;
+		start.countDown();
+		while (true) {
+			CommunicationTask task = subscriber.getCom().takeSendTask(200);
+			if (task == null) {
+				if (done.getCount() == 0) {
+					break;
+				}
+				continue;
+			}
+			String[] parts = subscriber.getCom().decryptMessage(task.getMessage()).split(":");
+			assertEquals("lobby", parts[0]);
+			assertEquals("changes", parts[1]);
+			long version = Long.parseLong(parts[3]);
+			assertTrue("push " + version + " after " + lastVersion, version > lastVersion);
+			lastVersion = version;
+			fromStart.apply(parts[2], version);
+			if (loadedLater != null) {
+				loadedLater.apply(parts[2], version);
+			}
+			if (++pushes == 10) {
+				// subscribed first, loads the list while changes are pushed
+				loadedLater = new Client(server.getModel().getLobbySnapshot());
+			}
+		}
+		Set<String> expected = names(server.getModel().getLobbySnapshot());
+		assertEquals(THREADS * ((GAMES + 2) / 3), expected.size());
+		assertEquals(expected, fromStart.games);
+		assertNotNull(loadedLater);
+		assertEquals(expected, loadedLater.games);
+	}
+
+	private static Set<String> names(LobbySnapshot snapshot) {
+		String encoded = snapshot.encode();
+		return encoded.isEmpty() ? new HashSet<>() : new HashSet<>(Arrays.asList(encoded.split(",")));
+	}
+
+	/**
+	 * Applies pushes like the lobby of the client
+	 */
+	private static final class Client {
+		private final Set<String> games;
+		private long version;
+
+		private Client(LobbySnapshot snapshot) {
+			games = names(snapshot);
+			version = snapshot.getVersion();
+		}
+
+		private void apply(String changes, long pushed) {
+			if (pushed <= version) {
+				return;
+			}
+			version = pushed;
+			for (String change : changes.split(",")) {
+				if (change.charAt(0) == '+') {
+					games.add(change.substring(1));
+				} else {
+					games.remove(change.substring(1));
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,47 @@
+package server.test;
+
+import static org.junit.Assert.*;
+
+import server.engine.MctsEngine;
+import server.engine.SearchResult;
+import server.metrics.MetricsRegistry;
+import server.models.BoardModel;
+
+/**
+ * Checks that the Monte Carlo search finds the obvious moves and keeps to its
+ * playout limit with several threads
+ */
+public class MctsEngineTest {
+	@org.junit.Test
+	public void testTakesImmediateWin() {
+		MctsEngine engine = new MctsEngine(new MetricsRegistry(), "mcts", 1, MctsEngine.DEFAULT_EXPLORATION);
+		SearchResult result = engine.search(play(new BoardModel(), "010203"), 10000, 20000);
+		assertEquals(0, result.getColumn());
+		assertTrue(result.getScore() > 900);
+	}
+
+	@org.junit.Test
+	public void testBlocksImmediateLoss() {
+		MctsEngine engine = new MctsEngine(new MetricsRegistry(), "mcts", 1, MctsEngine.DEFAULT_EXPLORATION);
+		assertEquals(6, engine.search(play(new BoardModel(), "363606"), 10000, 20000).getColumn());
+	}
+
+	@org.junit.Test
+	public void testParallelSearchKeepsPlayoutLimit() {
+		MctsEngine engine = new MctsEngine(new MetricsRegistry(), "mcts", 4, MctsEngine.DEFAULT_EXPLORATION);
+		BoardModel board = play(new BoardModel(), "33");
+		long hash = board.getHash();
+		SearchResult result = engine.search(board, 10000, 5000);
+		assertEquals(5000, result.getNodes());
+		assertTrue(board.canPlay(result.getColumn()));
+		assertEquals("the board itself is not changed", hash, board.getHash());
+		assertEquals(6, engine.search(play(new BoardModel(), "363606"), 10000, 20000).getColumn());
+	}
+
+	private static BoardModel play(BoardModel board, String moves) {
+		for (char move : moves.toCharArray()) {
+			assertTrue(board.play(move - '0'));
+		}
+		return board;
+	}
+}
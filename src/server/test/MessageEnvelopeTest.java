@@ -0,0 +1,45 @@
+package server.test;
+
+import static org.junit.Assert.*;
+
+import server.com.MessageEnvelope;
+import server.com.Opcode;
+
+/**
+ * Unit tests for the server side message envelope
+ */
+public class MessageEnvelopeTest {
+
+	@org.junit.Test
+	public void testParse() {
+		MessageEnvelope envelope = new MessageEnvelope("raw", "game:setstone:2");
+		assertEquals("raw", envelope.getRaw());
+		assertEquals("game", envelope.getDomain());
+		assertEquals("setstone", envelope.getCommand());
+		assertEquals(1, envelope.getArgCount());
+		assertEquals("2", envelope.getArg(0));
+		assertSame(Opcode.GAME_SETSTONE, envelope.getOpcode());
+	}
+
+	@org.junit.Test
+	public void testUnknownOpcode() {
+		MessageEnvelope envelope = new MessageEnvelope("game:fly:2", "game:fly:2");
+		assertNull(envelope.getOpcode());
+	}
+
+	@org.junit.Test
+	public void testWithoutCommand() {
+		MessageEnvelope envelope = new MessageEnvelope("phillip", "phillip");
+		assertFalse(envelope.hasCommand());
+		assertEquals(0, envelope.getArgCount());
+	}
+
+	@org.junit.Test
+	public void testStartsWith() {
+		MessageEnvelope envelope = new MessageEnvelope("connection:connect:Lukas", "connection:connect:Lukas");
+		assertTrue(envelope.startsWith("connection:connect".split(":")));
+		assertTrue(envelope.startsWith("connection:connect:Lukas".split(":")));
+		assertFalse(envelope.startsWith("connection:keyExchange".split(":")));
+		assertFalse(envelope.startsWith("connection:connect:Lukas:1".split(":")));
+	}
+}
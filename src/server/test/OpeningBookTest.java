@@ -0,0 +1,91 @@
+package server.test;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import server.engine.OpeningBook;
+import server.engine.OpeningBookBuilder;
+import server.engine.SearchEngine;
+import server.engine.SearchResult;
+import server.metrics.MetricsRegistry;
+import server.models.BoardModel;
+
+/**
+ * Builds a small book and looks up every position it should contain, also in
+ * its mirrored form
+ */
+public class OpeningBookTest {
+	private static final int PLIES = 3;
+
+	@org.junit.Test
+	public void testLookupAndMirror() throws IOException {
+		Path file = Files.createTempFile("openingbook", ".bin");
+		try {
+			SearchEngine engine = new SearchEngine(new MetricsRegistry(), 1, 1);
+			int written = new OpeningBookBuilder(engine, PLIES, 20).build(new BoardModel(5, 5, 4), file);
+			OpeningBook book = OpeningBook.open(file);
+			assertEquals(written, book.size());
+			assertEquals(PLIES, book.getPlies());
+			int found = check(book, new BoardModel(5, 5, 4));
+			// every position and its mirror image, the empty board once
+			assertTrue(found > written);
+			assertNull(book.lookup(new BoardModel()));
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	@org.junit.Test(expected = IOException.class)
+	public void testRejectsOtherFiles() throws IOException {
+		Path file = Files.createTempFile("openingbook", ".bin");
+		try {
+			Files.write(file, new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 });
+			OpeningBook.open(file);
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	/**
+	 * @return the number of positions looked up
+	 */
+	private static int check(OpeningBook book, BoardModel board) {
+		SearchResult result = book.lookup(board);
+		if (board.getMoveCount() > PLIES) {
+			assertNull(result);
+			return 0;
+		}
+		assertNotNull(result);
+		assertTrue(board.canPlay(result.getColumn()));
+		// the same moves mirrored, undo gives them back last first
+		int[] moves = new int[board.getMoveCount()];
+		BoardModel copy = board.copy();
+		for (int m = moves.length - 1; m >= 0; m--) {
+			moves[m] = copy.getLastSetRow();
+			copy.undo();
+		}
+		BoardModel mirror = new BoardModel(board.getColumns(), board.getRows(), board.getWinLength());
+		for (int move : moves) {
+			mirror.play(board.mirrorColumn(move));
+		}
+		SearchResult mirrored = book.lookup(mirror);
+		if (board.getHash() != board.getMirrorHash()) {
+			// a symmetric position is its own mirror image, both moves are right
+			assertEquals(board.mirrorColumn(result.getColumn()), mirrored.getColumn());
+		}
+		assertEquals(result.getScore(), mirrored.getScore());
+		int found = 1;
+		for (int column = 0; column < board.getColumns(); column++) {
+			if (board.play(column)) {
+				if (!board.lastStoneWins()) {
+					found += check(book, board);
+				}
+				board.undo();
+			}
+		}
+		return found;
+	}
+}
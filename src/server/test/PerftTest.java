@@ -0,0 +1,53 @@
+package server.test;
+
+import static org.junit.Assert.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+
+import server.engine.Perft;
+import server.engine.SelfPlay;
+import server.models.BoardModel;
+
+/**
+ * Checks the game core against the known move counts of the classic board and
+ * the self-play records against a replay
+ */
+public class PerftTest {
+	private final ForkJoinPool pool = new ForkJoinPool(4);
+
+	@org.junit.Test
+	public void testClassicBoardCounts() {
+		long[] expected = { 1, 7, 49, 343, 2401, 16807, 117649, 823536 };
+		for (int depth = 0; depth < expected.length; depth++) {
+			assertEquals(expected[depth], Perft.count(new BoardModel(), depth));
+		}
+		assertEquals(823536, Perft.count(new BoardModel(), 7, pool));
+	}
+
+	@org.junit.Test
+	public void testParallelCountMatchesSequential() {
+		BoardModel board = new BoardModel(4, 4, 3);
+		for (int depth = 0; depth <= 16; depth += 4) {
+			assertEquals(Perft.count(board, depth), Perft.count(board, depth, pool));
+		}
+		assertEquals("the board itself is not changed", 0, board.getMoveCount());
+	}
+
+	@org.junit.Test
+	public void testSelfPlayRecordsReplay() throws Exception {
+		Path file = Files.createTempFile("selfplay", ".bin");
+		try {
+			SelfPlay.generate(new BoardModel(9, 7, 5), 10000, 3, pool, file);
+			long[] results = SelfPlay.verify(file);
+			assertEquals(10000, results[0] + results[1] + results[2]);
+			Path again = Files.createTempFile("selfplay", ".bin");
+			SelfPlay.generate(new BoardModel(9, 7, 5), 10000, 3, new ForkJoinPool(1), again);
+			assertArrayEquals("the same seed writes the same file", Files.readAllBytes(file), Files.readAllBytes(again));
+			Files.delete(again);
+		} finally {
+			Files.delete(file);
+		}
+	}
+}
@@ -0,0 +1,143 @@
+package server.test;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import server.engine.Analysis;
+import server.engine.AnalysisCache;
+import server.engine.SearchEngine;
+import server.engine.SearchResult;
+import server.metrics.MetricsRegistry;
+import server.models.BoardModel;
+
+/**
+ * Checks the moves and scores of the engine against a plain minimax on boards
+ * small enough to search completely
+ */
+public class SearchEngineTest {
+	private final SearchEngine engine = new SearchEngine(new MetricsRegistry(), 1);
+
+	@org.junit.Test
+	public void testTakesImmediateWin() {
+		BoardModel board = play(new BoardModel(), "010203");
+		// both have three in a line, player 1 is to move and completes column 0
+		SearchResult result = engine.search(board, 1000);
+		assertEquals(0, result.getColumn());
+		assertTrue(SearchEngine.isWin(result.getScore()));
+	}
+
+	@org.junit.Test
+	public void testBlocksImmediateLoss() {
+		BoardModel board = play(new BoardModel(), "363606");
+		// player 2 has three stones on top of each other in column 6
+		assertEquals(6, engine.search(board, 1000).getColumn());
+	}
+
+	@org.junit.Test
+	public void testMatchesMinimaxOnSmallBoards() {
+		matchesMinimax(engine, 200);
+	}
+
+	@org.junit.Test
+	public void testParallelSearchMatchesMinimax() {
+		matchesMinimax(new SearchEngine(new MetricsRegistry(), 1, 4), 100);
+	}
+
+	@org.junit.Test
+	public void testAnalyzeScoresEveryColumn() {
+		Random random = new Random(11);
+		for (int n = 0; n < 100; n++) {
+			BoardModel board = randomSmallBoard(random);
+			Analysis analysis = engine.analyze(board, 10000);
+			for (int column = 0; column < board.getColumns(); column++) {
+				if (!board.canPlay(column)) {
+					assertEquals(Analysis.FULL, analysis.getScore(column));
+					continue;
+				}
+				board.play(column);
+				int expected = board.lastStoneWins() ? 1 : board.isTie() ? 0 : -minimax(board);
+				board.undo();
+				assertEquals(expected, value(analysis.getScore(column)));
+			}
+			assertEquals(minimax(board), value(analysis.getScore(analysis.getBestColumn())));
+		}
+	}
+
+	@org.junit.Test
+	public void testAnalysisCacheMirrorsAndEvicts() {
+		AnalysisCache cache = new AnalysisCache(2);
+		BoardModel left = play(new BoardModel(), "0");
+		BoardModel right = play(new BoardModel(), "6");
+		cache.put(left, new Analysis(new int[] { 1, 2, 3, 4, 5, 6, 7 }, 3, 0, 0));
+		assertEquals(7, cache.get(right).getScore(0));
+		assertEquals(1, cache.get(right).getScore(6));
+		cache.put(play(new BoardModel(), "1"), new Analysis(new int[7], 1, 0, 0));
+		cache.put(play(new BoardModel(), "2"), new Analysis(new int[7], 1, 0, 0));
+		assertNull("the least recently asked position is forgotten", cache.get(left));
+		assertEquals(2, cache.size());
+	}
+
+	private static BoardModel randomSmallBoard(Random random) {
+		BoardModel board = new BoardModel(4, 4, 3);
+		for (int moves = 4 + random.nextInt(5); moves > 0; moves--) {
+			int column = random.nextInt(4);
+			if (!board.canPlay(column)) {
+				continue;
+			}
+			board.play(column);
+			if (board.lastStoneWins()) {
+				board.undo();
+			}
+		}
+		return board;
+	}
+
+	/**
+	 * @return 1 for a win, -1 for a loss and 0 otherwise
+	 */
+	private static int value(int score) {
+		return SearchEngine.isWin(score) ? 1 : SearchEngine.isLoss(score) ? -1 : 0;
+	}
+
+	private static void matchesMinimax(SearchEngine engine, int games) {
+		Random random = new Random(7);
+		for (int n = 0; n < games; n++) {
+			BoardModel board = randomSmallBoard(random);
+			long hash = board.getHash();
+			SearchResult result = engine.search(board, 10000);
+			assertEquals("the board itself is not changed", hash, board.getHash());
+			int expected = minimax(board);
+			assertEquals(expected, value(result.getScore()));
+			board.play(result.getColumn());
+			int after = board.lastStoneWins() ? 1 : board.isTie() ? 0 : -minimax(board);
+			assertEquals("the chosen move keeps the value", expected, after);
+		}
+	}
+
+	/**
+	 * @return 1 if the player to move wins, -1 if it loses, 0 for a tie
+	 */
+	private static int minimax(BoardModel board) {
+		int best = -1;
+		boolean any = false;
+		for (int column = 0; column < board.getColumns(); column++) {
+			if (!board.canPlay(column)) {
+				continue;
+			}
+			any = true;
+			board.play(column);
+			int score = board.lastStoneWins() ? 1 : board.isTie() ? 0 : -minimax(board);
+			board.undo();
+			best = Math.max(best, score);
+		}
+		return any ? best : 0;
+	}
+
+	private static BoardModel play(BoardModel board, String moves) {
+		for (char move : moves.toCharArray()) {
+			assertTrue(board.play(move - '0'));
+		}
+		return board;
+	}
+}